@@ -38,6 +38,7 @@ import javafx.stage.Stage;
  */
 
 public class App extends Application {
+    private PaneOrganizer _organizer;
 	
 	/**
 	 * All the classic stuff. Instantiates PaneOrganizer class and sets up JavaFX scene and stage.
@@ -45,8 +46,8 @@ public class App extends Application {
     @Override
     public void start(Stage stage) {
         stage.setTitle("Tic Tac Toe");
-        PaneOrganizer organizer = new PaneOrganizer();
-        Scene scene = new Scene(organizer.getRoot(), Constants.STAGE_WIDTH, Constants.STAGE_HEIGHT);
+        _organizer = new PaneOrganizer();
+        Scene scene = new Scene(_organizer.getRoot(), Constants.STAGE_WIDTH, Constants.STAGE_HEIGHT);
         
         // Links CSS stylesheet, allowing easy custom styling.
         scene.getStylesheets().add(this.getClass().getResource("stylesheet.css").toExternalForm());
@@ -57,6 +58,14 @@ public class App extends Application {
     	stage.show();
     }
 
+    /**
+     * Called by JavaFX when the window is closed. Stops any computer player that is still thinking.
+     */
+    @Override
+    public void stop() {
+        _organizer.stopGame();
+    }
+
     public static void main(String[] args) {
     	launch(args);
     }
@@ -0,0 +1,116 @@
+package TicTacToe;
+
+/**
+ * This class is the engine's bench: a quick, repeatable check of both its speed and its behaviour.
+ * The engine searches each of a fixed list of Ultimate positions for a fixed number of iterations
+ * on one thread, with its random number generators seeded, so it makes exactly the same search every
+ * time on any machine. At the end the bench prints the playouts per second, which show whether the
+ * engine has got slower, and a signature made of the total number of nodes and a checksum of the
+ * chosen moves. The signature only changes if the engine's behaviour does, so a change that is
+ * only meant to make the engine faster should leave it alone.
+ *
+ * The node budget is fixed, but if the heap is too small for the trees they are pruned (see
+ * Engine), which changes the signature. The default heap is plenty.
+ *
+ * Usage: java TicTacToe.Bench [-iterations n] [-seed n]
+ */
+public class Bench {
+	// Each position is given as the moves leading to it, as x,y pairs, with X moving first.
+	private static final int[][][] POSITIONS = {
+		{},
+		{ { 7, 5 }, { 4, 7 }, { 5, 5 }, { 7, 7 }, { 4, 3 }, { 4, 2 }, { 5, 7 } },
+		{ { 8, 4 }, { 7, 3 }, { 5, 2 }, { 6, 6 }, { 2, 1 }, { 8, 3 }, { 6, 2 }, { 2, 8 }, { 8, 8 },
+				{ 7, 7 }, { 5, 3 }, { 6, 1 }, { 0, 3 }, { 1, 0 } },
+		{ { 6, 5 }, { 2, 7 }, { 6, 3 }, { 2, 1 }, { 8, 4 }, { 8, 3 }, { 8, 1 }, { 6, 4 }, { 2, 3 },
+				{ 7, 2 }, { 3, 8 }, { 2, 6 }, { 6, 2 }, { 1, 7 }, { 5, 5 }, { 7, 8 }, { 4, 7 },
+				{ 4, 5 }, { 5, 7 }, { 8, 5 }, { 8, 6 } },
+		{ { 0, 6 }, { 1, 0 }, { 4, 0 }, { 5, 2 }, { 6, 7 }, { 1, 5 }, { 4, 6 }, { 3, 0 }, { 0, 0 },
+				{ 1, 1 }, { 4, 5 }, { 4, 8 }, { 5, 6 }, { 8, 1 }, { 8, 3 }, { 6, 1 }, { 2, 5 },
+				{ 8, 6 }, { 7, 1 }, { 4, 4 }, { 5, 4 }, { 7, 5 }, { 3, 7 }, { 0, 4 }, { 0, 3 },
+				{ 2, 1 }, { 6, 3 }, { 1, 2 } },
+		{ { 0, 6 }, { 1, 1 }, { 3, 5 }, { 0, 8 }, { 0, 7 }, { 0, 3 }, { 0, 2 }, { 1, 7 }, { 3, 4 },
+				{ 0, 4 }, { 1, 4 }, { 4, 4 }, { 4, 5 }, { 5, 7 }, { 6, 4 }, { 2, 3 }, { 7, 0 },
+				{ 5, 1 }, { 8, 4 }, { 8, 5 }, { 8, 7 }, { 7, 4 }, { 4, 3 }, { 3, 1 }, { 1, 5 },
+				{ 3, 7 }, { 2, 5 }, { 7, 7 }, { 5, 3 }, { 6, 2 }, { 1, 8 }, { 4, 8 }, { 5, 6 },
+				{ 6, 0 }, { 2, 1 } },
+		{ { 8, 5 }, { 6, 6 }, { 0, 2 }, { 2, 8 }, { 7, 8 }, { 3, 6 }, { 2, 0 }, { 8, 1 }, { 8, 3 },
+				{ 7, 1 }, { 4, 4 }, { 3, 3 }, { 1, 0 }, { 3, 2 }, { 0, 7 }, { 0, 5 }, { 1, 7 },
+				{ 4, 5 }, { 5, 7 }, { 7, 3 }, { 5, 1 }, { 6, 3 }, { 1, 1 }, { 3, 5 }, { 0, 6 },
+				{ 4, 0 }, { 4, 1 }, { 5, 4 }, { 7, 5 }, { 4, 8 }, { 5, 6 }, { 8, 0 }, { 6, 1 },
+				{ 1, 5 }, { 3, 7 }, { 0, 3 }, { 4, 3 }, { 5, 0 }, { 7, 0 }, { 3, 0 }, { 7, 4 },
+				{ 3, 4 } },
+		{ { 8, 5 }, { 8, 7 }, { 8, 4 }, { 7, 5 }, { 4, 6 }, { 5, 0 }, { 8, 0 }, { 8, 2 }, { 6, 8 },
+				{ 1, 7 }, { 5, 4 }, { 6, 5 }, { 2, 8 }, { 8, 6 }, { 6, 0 }, { 1, 0 }, { 5, 2 },
+				{ 7, 6 }, { 3, 1 }, { 2, 5 }, { 7, 7 }, { 4, 3 }, { 3, 2 }, { 2, 7 }, { 7, 4 },
+				{ 3, 3 }, { 1, 2 }, { 5, 8 }, { 6, 6 }, { 0, 0 }, { 0, 2 }, { 1, 8 }, { 3, 8 },
+				{ 2, 6 }, { 6, 2 }, { 1, 6 }, { 3, 0 }, { 2, 1 }, { 6, 3 }, { 2, 2 }, { 7, 8 },
+				{ 4, 8 }, { 4, 7 }, { 4, 4 }, { 3, 5 }, { 3, 6 }, { 0, 1 }, { 2, 3 }, { 7, 1 } },
+	};
+
+	private long _iterationBudget;
+	private long _seed;
+
+	/**
+	 * This is the entry point of the bench. It reads the options (see the class comment) and runs
+	 * the bench.
+	 */
+	public static void main(String[] args) {
+		Bench bench = new Bench();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-iterations")) {
+				bench._iterationBudget = Long.parseLong(args[i + 1]);
+			} else if (args[i].equals("-seed")) {
+				bench._seed = Long.parseLong(args[i + 1]);
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(1);
+			}
+		}
+		bench.run();
+	}
+
+	/**
+	 * This constructor sets up the default bench: 50000 iterations per position with a seed of 1.
+	 */
+	public Bench() {
+		_iterationBudget = 50000;
+		_seed = 1;
+	}
+
+	/**
+	 * This method searches every position with a new engine, printing a line for each, and then
+	 * prints the totals and the signature.
+	 */
+	public void run() {
+		long numNodes = 0;
+		long numPlayouts = 0;
+		long searchTime = 0;
+		int checksum = 0;
+		for (int i = 0; i < POSITIONS.length; i++) {
+			SimulationBoard position = new SimulationBoard(GameSetting.ULTIMATE);
+			Piece piece = Piece.X;
+			for (int[] move : POSITIONS[i]) {
+				position.makeMove(move, piece);
+				piece = piece.flip();
+			}
+			Engine engine = new Engine(GameSetting.ULTIMATE, piece);
+			engine.setNumThreads(1);
+			engine.setSeed(_seed);
+			engine.setIterationBudget(_iterationBudget);
+			SearchResult result = engine.search(position, Long.MAX_VALUE);
+			engine.shutdown();
+
+			int[] move = result.getMove();
+			System.out.println(String.format("Position %d: move %d,%d, %d nodes, %d playouts, %.0f ms", i + 1,
+					move[0], move[1], result.getNumNodes(), result.getNumNewPlayouts(),
+					result.getSearchTime() / 1e6));
+			numNodes += result.getNumNodes();
+			numPlayouts += result.getNumNewPlayouts();
+			searchTime += result.getSearchTime();
+			checksum = 31 * checksum + SimulationBoard.encodeMove(move[0], move[1]);
+		}
+		System.out.println("Nodes: " + numNodes);
+		System.out.println(String.format("Playouts/s: %.0f", numPlayouts / (searchTime / 1e9)));
+		System.out.println(String.format("Signature: %d/%08x", numNodes, checksum));
+	}
+}
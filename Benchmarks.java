@@ -0,0 +1,295 @@
+package TicTacToe;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * This class times the rules and the building blocks of the search, so that a change to one of
+ * them can be measured rather than guessed at. Each benchmark is run for both game settings and for
+ * an early, a middle and a late position of a random game (the same ones every time). It is first
+ * warmed up so the JIT compiler has done its work, then timed for several iterations, and the mean
+ * time per operation is reported with the spread between iterations. The bytes allocated per
+ * operation are reported alongside, since garbage is often what makes the search slow.
+ *
+ * The Board benchmarks use dummy boards, which do not create anything visual but still need JavaFX
+ * on the class path. The rest only use the engine.
+ *
+ * Usage: java TicTacToe.Benchmarks [filter] [-time milliseconds] [-check], where only the
+ * benchmarks whose names contain the filter are run, and the time is the length of each iteration
+ * (500 by default). With -check, the benchmarks are not run; instead the playout loop is warmed up
+ * and checked not to allocate anything from any of the positions, and the program exits with status
+ * 1 if it does, so that a change which makes the playouts create garbage again cannot go unnoticed.
+ * This needs only the engine, not JavaFX.
+ */
+public class Benchmarks {
+	private static final int NUM_WARMUP_ITERATIONS = 2;
+	private static final int NUM_ITERATIONS = 5;
+	// The number of improveGameTree() calls timed as one operation.
+	private static final int NUM_SEARCH_ITERATIONS = 1000;
+	// The number of warmed-up playouts the allocation check runs from each position.
+	private static final int NUM_CHECK_PLAYOUTS = 100000;
+
+	private long _iterationTime;
+	private String _filter;
+	private boolean _isCheck;
+	// Every operation's result is added in here, so that the JIT compiler cannot throw the work away.
+	private int _sink;
+
+	/**
+	 * This enum describes how far into the game a benchmarked position is.
+	 */
+	public enum Stage {
+		EARLY, MID, LATE
+	}
+
+	/**
+	 * This is the entry point of the benchmarks. It reads the options (see the class comment) and
+	 * runs every matching benchmark.
+	 */
+	public static void main(String[] args) {
+		Benchmarks benchmarks = new Benchmarks();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-time") && i + 1 < args.length) {
+				benchmarks._iterationTime = Long.parseLong(args[i + 1]) * 1000000;
+				i++;
+			} else if (args[i].equals("-check")) {
+				benchmarks._isCheck = true;
+			} else {
+				benchmarks._filter = args[i];
+			}
+		}
+		if (benchmarks._isCheck) {
+			System.exit(benchmarks.checkPlayoutAllocation() ? 0 : 1);
+		}
+		benchmarks.run();
+	}
+
+	/**
+	 * This constructor sets up the default options: every benchmark, with iterations of half a
+	 * second.
+	 */
+	public Benchmarks() {
+		_iterationTime = 500000000;
+		_filter = "";
+	}
+
+	/**
+	 * This method runs all the benchmarks matching the filter and prints a line for each.
+	 */
+	public void run() {
+		System.out.println(String.format("%-34s %-9s %-6s %14s %12s %12s", "Benchmark", "Setting", "Stage",
+				"ns/op", "error", "B/op"));
+		for (GameSetting gameSetting : GameSetting.values()) {
+			for (Stage stage : Stage.values()) {
+				this.runBenchmarks(gameSetting, stage);
+			}
+		}
+	}
+
+	/**
+	 * This method warms up the playout loop from each of the benchmarks' positions and then checks
+	 * that NUM_CHECK_PLAYOUTS more playouts allocate nothing. It prints a line for each position and
+	 * returns whether they all passed.
+	 */
+	public boolean checkPlayoutAllocation() {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		boolean passed = true;
+		for (GameSetting gameSetting : GameSetting.values()) {
+			for (Stage stage : Stage.values()) {
+				SimulationBoard position = new SimulationBoard(gameSetting);
+				Piece lastPiece = Benchmarks.setUpPosition(gameSetting, stage, null, position);
+				SimulationBoard playoutBoard = new SimulationBoard(gameSetting);
+				Random random = new Random(1);
+				IntSupplier playout = () -> {
+					playoutBoard.copyBoard(position);
+					return MoveSearch.playRandomGame(playoutBoard, lastPiece, random);
+				};
+				for (int i = 0; i < NUM_WARMUP_ITERATIONS; i++) {
+					this.runIteration(playout);
+				}
+
+				// Reading the allocated bytes may allocate a little itself, so that is measured first and
+				// taken off.
+				long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+				long readingBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+				startBytes = threadBean.getThreadAllocatedBytes(threadId);
+				for (int i = 0; i < NUM_CHECK_PLAYOUTS; i++) {
+					_sink += playout.getAsInt();
+				}
+				long bytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes - readingBytes;
+				System.out.println(String.format("%-34s %-9s %-6s %12d B", "SimulationBoard playout", gameSetting,
+						stage, bytes));
+				if (bytes > 0) {
+					passed = false;
+				}
+			}
+		}
+		System.out.println(passed ? "The playouts allocate nothing" : "FAILED: the playouts allocate");
+		return passed;
+	}
+
+	/**
+	 * This method sets up a position and runs the benchmarks on it.
+	 */
+	private void runBenchmarks(GameSetting gameSetting, Stage stage) {
+		Board board = new Board(gameSetting, true);
+		SimulationBoard position = new SimulationBoard(gameSetting);
+		Piece lastPiece = Benchmarks.setUpPosition(gameSetting, stage, board, position);
+		Square[][] boardArray = board.getBoardArray();
+		int boardSize = Board.findBoardSize(gameSetting);
+
+		this.runBenchmark("Board.getLegalMoves", gameSetting, stage, () -> board.getLegalMoves().size());
+		this.runBenchmark("Board.checkWin", gameSetting, stage,
+				() -> Board.checkWin(board, lastPiece, gameSetting)[0] ? 1 : 0);
+		this.runBenchmark("Board.checkThreeByThreeWin", gameSetting, stage, () -> {
+			int result = 0;
+			for (int x = 0; x < boardSize; x += 3) {
+				for (int y = 0; y < boardSize; y += 3) {
+					result += Board.checkThreeByThreeWin(x, y, boardArray).ordinal();
+				}
+			}
+			return result;
+		});
+		if (gameSetting == GameSetting.ULTIMATE) {
+			this.runBenchmark("Board.checkFinishedBoards", gameSetting, stage, () -> {
+				Board.checkFinishedBoards(board, lastPiece);
+				return 0;
+			});
+		}
+		this.runBenchmark("Board(Board)", gameSetting, stage,
+				() -> new Board(gameSetting, true, board).getPreviousMove()[0]);
+
+		SimulationBoard playoutBoard = new SimulationBoard(gameSetting);
+		Random random = new Random(1);
+		this.runBenchmark("SimulationBoard playout", gameSetting, stage, () -> {
+			playoutBoard.copyBoard(position);
+			return MoveSearch.playRandomGame(playoutBoard, lastPiece, random);
+		});
+
+		// The UCB benchmarks need a tree with some statistics in it.
+		MoveTree moveTree = new MoveTree(lastPiece);
+		MoveSearch search = new MoveSearch(moveTree, gameSetting, new Random(1), false);
+		search.setPosition(position);
+		for (int i = 0; i < NUM_SEARCH_ITERATIONS; i++) {
+			search.improveGameTree();
+		}
+		int root = moveTree.getRoot();
+		int child = search.selectUCB(root);
+		int rootPlayouts = moveTree.getNumPlayouts(root);
+		this.runBenchmark("MoveTree.getUCBStat", gameSetting, stage,
+				() -> (int) moveTree.getUCBStat(child, rootPlayouts));
+		this.runBenchmark("MoveSearch.selectUCB", gameSetting, stage, () -> search.selectUCB(root));
+
+		this.runBenchmark("MoveSearch.improveGameTree x" + NUM_SEARCH_ITERATIONS, gameSetting, stage, () -> {
+			MoveTree newTree = new MoveTree(lastPiece);
+			MoveSearch newSearch = new MoveSearch(newTree, gameSetting, new Random(1), false);
+			newSearch.setPosition(position);
+			for (int i = 0; i < NUM_SEARCH_ITERATIONS; i++) {
+				newSearch.improveGameTree();
+			}
+			return newTree.getNumNodes();
+		});
+	}
+
+	/**
+	 * This method warms up and times one benchmark, then prints the mean time per operation with the
+	 * standard deviation between iterations as the error, and the bytes allocated per operation.
+	 */
+	private void runBenchmark(String name, GameSetting gameSetting, Stage stage, IntSupplier operation) {
+		if (!name.contains(_filter)) {
+			return;
+		}
+		for (int i = 0; i < NUM_WARMUP_ITERATIONS; i++) {
+			this.runIteration(operation);
+		}
+		double[] times = new double[NUM_ITERATIONS];
+		double totalBytes = 0;
+		double meanTime = 0;
+		for (int i = 0; i < NUM_ITERATIONS; i++) {
+			double[] result = this.runIteration(operation);
+			times[i] = result[0];
+			totalBytes += result[1];
+			meanTime += result[0] / NUM_ITERATIONS;
+		}
+		double variance = 0;
+		for (double time : times) {
+			variance += (time - meanTime) * (time - meanTime) / (NUM_ITERATIONS - 1);
+		}
+		System.out.println(String.format("%-34s %-9s %-6s %14.1f %12.1f %12.1f", name, gameSetting, stage,
+				meanTime, Math.sqrt(variance), totalBytes / NUM_ITERATIONS));
+	}
+
+	/**
+	 * This method runs an operation over and over for one iteration and returns the time per
+	 * operation in nanoseconds and the bytes allocated per operation.
+	 */
+	private double[] runIteration(IntSupplier operation) {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+		long startTime = System.nanoTime();
+		long numOperations = 0;
+		// Checks the clock only every so often, so that reading it does not skew short operations.
+		int batchSize = 1;
+		while (System.nanoTime() - startTime < _iterationTime) {
+			for (int i = 0; i < batchSize; i++) {
+				_sink += operation.getAsInt();
+			}
+			numOperations += batchSize;
+			if (System.nanoTime() - startTime < _iterationTime / 100) {
+				batchSize *= 2;
+			}
+		}
+		long time = System.nanoTime() - startTime;
+		long bytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+		return new double[] { (double) time / numOperations, (double) bytes / numOperations };
+	}
+
+	/**
+	 * This static method plays random moves from an empty board until it reaches the number of moves
+	 * for the stage, on both a dummy Board (unless it is null) and a SimulationBoard, and returns the
+	 * piece that moved last. The moves are the same every time. If a game ends too soon, another is
+	 * tried.
+	 */
+	private static Piece setUpPosition(GameSetting gameSetting, Stage stage, Board board, SimulationBoard position) {
+		int[] numMoves = gameSetting == GameSetting.ULTIMATE ? new int[] { 10, 30, 50 } : new int[] { 1, 3, 5 };
+		Random random = new Random(stage.ordinal());
+		while (true) {
+			SimulationBoard game = new SimulationBoard(gameSetting);
+			ArrayList<int[]> moves = new ArrayList<int[]>();
+			Piece piece = Piece.X;
+			while (game.getGameState() == GameState.NOWIN && moves.size() < numMoves[stage.ordinal()]) {
+				int move = game.getRandomLegalMove(random);
+				game.makeMove(move, piece);
+				moves.add(new int[] { SimulationBoard.decodeX(move), SimulationBoard.decodeY(move) });
+				piece = piece.flip();
+			}
+			if (game.getGameState() != GameState.NOWIN) {
+				continue;
+			}
+
+			piece = Piece.X;
+			for (int[] move : moves) {
+				position.makeMove(move, piece);
+				if (board != null) {
+					board.getBoardArray()[move[0]][move[1]].setPiece(piece);
+					board.setPreviousMove(move);
+					board.setIsFirstMove(false);
+					if (gameSetting == GameSetting.ULTIMATE) {
+						Board.checkFinishedBoards(board, piece);
+					}
+				}
+				piece = piece.flip();
+			}
+			if (board != null && board.getLegalMoves().size() != position.getNumLegalMoves()) {
+				throw new IllegalStateException("The Board and the SimulationBoard disagree about the position");
+			}
+			return piece.flip();
+		}
+	}
+}
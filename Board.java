@@ -1,8 +1,6 @@
 package TicTacToe;
 
-import TicTacToe.TicTacToe.GameSetting;
 import java.util.ArrayList;
-import TicTacToe.Square.Piece;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.layout.Pane;
@@ -23,13 +21,6 @@ public class Board {
 	private boolean _isDummyBoard;
 	private boolean _isFirstMove;
 
-	/**
-	 * This enum describes possible game states. NOWIN means the game is still ongoing.
-	 */
-	public enum GameState {
-		WIN, LOSE, NOWIN, DRAW
-	}
-
 	/**
 	 * This constructor sets up some flags and then calls setUpBoard to set up the board.
 	 */
@@ -463,12 +454,30 @@ public class Board {
 	 * to be added.
 	 */
 	public static int findBoardSize(GameSetting gameSetting) {
-		if (gameSetting == GameSetting.BASIC) {
-			return 3;
-		} else if (gameSetting == GameSetting.ULTIMATE) {
-			return 9;
-		} else {
-			return -1;
+		return gameSetting.getBoardSize();
+	}
+
+	/**
+	 * This method copies the board's position into a SimulationBoard, which is what the computer
+	 * searches with. Passing plain arrays keeps the SimulationBoard (and the rest of the engine) free
+	 * of the Square class and its JavaFX parts.
+	 */
+	public SimulationBoard toSimulationBoard() {
+		int boardSize = Board.findBoardSize(_gameSetting);
+		Piece[][] pieces = new Piece[boardSize][boardSize];
+		for (int x = 0; x < boardSize; x++) {
+			for (int y = 0; y < boardSize; y++) {
+				pieces[x][y] = _board[x][y].getPiece();
+			}
+		}
+		Piece[][] boardsWon = new Piece[3][3];
+		if (_gameSetting == GameSetting.ULTIMATE) {
+			for (int x = 0; x < 3; x++) {
+				for (int y = 0; y < 3; y++) {
+					boardsWon[x][y] = _boardsWon[x][y].getPiece();
+				}
+			}
 		}
+		return new SimulationBoard(_gameSetting, pieces, boardsWon, _isFirstMove ? null : _previousMove);
 	}
 }
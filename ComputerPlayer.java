@@ -1,31 +1,32 @@
 package TicTacToe;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import TicTacToe.Board.GameState;
-import TicTacToe.Square.Piece;
-import TicTacToe.TicTacToe.GameSetting;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.util.Duration;
+import javafx.application.Platform;
 
 /**
- * This class contains the algorithm for the computer to play the game. It also has some other
- * methods that players should have (e.g. returning a name). Many of these methods pertain to the
- * algorithm (MCTS) used to choose game moves. Since it is quite confusing (took me a long time to
- * understand), I will not attempt to fully explain it but instead refer the reader to this
- * explanatory page in case of confusion:
+ * This class is the computer player in the JavaFX game. The algorithm it uses to choose moves (a
+ * Monte Carlo Tree Search) lives in the Engine class, which does not depend on JavaFX; this class
+ * copies the real board for the engine, runs it off the JavaFX application thread and plays the move
+ * it chooses. Since MCTS is quite confusing (took me a long time to understand), I will not attempt
+ * to fully explain it but instead refer the reader to this explanatory page in case of confusion:
  * 
  * https://en.wikipedia.org/wiki/Monte_Carlo_tree_search
  */
 public class ComputerPlayer extends Player {
 	private Piece _piece;
-	private Board _dummyBoard;
-	private MoveTree _moveTree;
+	private Engine _engine;
+	private TimeManager _timeManager;
 	private GameSetting _gameSetting;
-	private Piece _currentSimulationPiece;
+	private SearchResult _lastSearchResult;
+	private long _numNodesRetained;
+	private long _numNodesFreed;
+	private ExecutorService _moveExecutor;
+	private volatile AtomicBoolean _stopped;
+	private volatile AtomicBoolean _ponderStopped;
+	private boolean _isPondering;
 
 	/**
 	 * This constructor is called if this player is the first to be instantiated. It uses the
@@ -35,6 +36,8 @@ public class ComputerPlayer extends Player {
 		super();
 		_piece = super.getPiece();
 		this.setGameSetting(gameSetting);
+		_engine = new Engine(gameSetting, _piece);
+		_timeManager = new TimeManager(Constants.COMPUTER_GAME_TIME, Constants.COMPUTER_TIME_INCREMENT);
 	}
 
 	/**
@@ -45,6 +48,8 @@ public class ComputerPlayer extends Player {
 		super(piece);
 		_piece = super.getPiece();
 		this.setGameSetting(gameSetting);
+		_engine = new Engine(gameSetting, _piece);
+		_timeManager = new TimeManager(Constants.COMPUTER_GAME_TIME, Constants.COMPUTER_TIME_INCREMENT);
 	}
 
 	/**
@@ -55,228 +60,125 @@ public class ComputerPlayer extends Player {
 	}
 
 	/**
-	 * This is the method that is called to play a move. It is effectively a wrapper around the
-	 * determineMove() method but animates it for a short amount of time. This solved a bug where
-	 * the previous move would not be visually displayed because the algorithm's game loop suspended
-	 * other processes.
+	 * This is the method that is called to play a move. The search runs on the player's own thread
+	 * rather than the JavaFX application thread, so the window keeps drawing and responding while
+	 * the computer thinks. Everything the search needs from the real board is copied here first,
+	 * and the chosen move is handed back to the JavaFX thread to be played with Platform.runLater().
 	 */
-	public void animateMove(TicTacToe game) {
-		KeyFrame kf = new KeyFrame(Duration.millis(100), e -> {
-			this.determineMove(game);
-		});
-		Timeline timeline = new Timeline(kf);
-		timeline.setCycleCount(1);
-		timeline.play();
-	}
-
-	/**
-	 * This method runs the improveGameTree() method repeatedly until the time allocated (currently
-	 * 800 milliseconds) runs out.
-	 */
-	private void determineMove(TicTacToe game) {
-		int timeBudget = 800000000;
-		long startTime = System.nanoTime();
-		boolean timeRanOut = false;
-		// This if/else statement attempts to prune the game tree for the previous move (made by the
-		// opponent).
-		if (_moveTree == null) {
-			_moveTree = new MoveTree(TicTacToe.flipPiece(_piece));
-		} else {
-			if (_moveTree.getRoot().getChildren().size() != 0) {
-				boolean contained = false;
-				// Attempts to find the previous move in the top level of the game tree.
-				MoveTreeNode node = _moveTree.getRoot().getChildren().get(0);
-				for (MoveTreeNode n : _moveTree.getRoot().getChildren()) {
-					if (n.getMove()[0] == game.getBoard().getPreviousMove()[0]
-							&& n.getMove()[1] == game.getBoard().getPreviousMove()[1]) {
-						node = n;
-						contained = true;
-					}
-				}
-
-				// If found, prunes the tree by setting that node as the root.
-				if (contained) {
-					_moveTree.setRoot(node);
-				} else {
-					_moveTree = new MoveTree(TicTacToe.flipPiece(_piece));
-				}
-			} else {
-				_moveTree = new MoveTree(TicTacToe.flipPiece(_piece));
+	public void startMove(TicTacToe game) {
+		SimulationBoard position = game.getBoard().toSimulationBoard();
+		AtomicBoolean stopped = new AtomicBoolean(false);
+		_stopped = stopped;
+		// Ends any pondering, so that the move can start as soon as possible, and makes a new flag to
+		// end the pondering after this move.
+		if (_ponderStopped != null) {
+			_ponderStopped.set(true);
+		}
+		AtomicBoolean ponderStopped = new AtomicBoolean(false);
+		_ponderStopped = ponderStopped;
+
+		this.getMoveExecutor().execute(() -> {
+			// The time for each move comes out of the player's clock for the game.
+			SearchResult result = _engine.search(position, _timeManager, stopped);
+			// No move is chosen if the player was stopped before the search began.
+			if (result == null) {
+				return;
 			}
+			_lastSearchResult = result;
+			_numNodesRetained += result.getNumNodesRetained();
+			_numNodesFreed += result.getNumNodesFreed();
+			int[] move = result.getMove();
+			Platform.runLater(() -> {
+				// If the player was stopped while it was thinking, the game has moved on without it.
+				if (!stopped.get()) {
+					this.move(game, Board.findBoardSize(_gameSetting), move[0], move[1]);
+					game.switchPlayer();
+				}
+			});
 
-		}
-		// Improves the tree until the time runs out.
-		while (!timeRanOut) {
-			this.improveGameTree(game);
-			if (System.nanoTime() - startTime >= timeBudget) {
-				timeRanOut = true;
+			position.makeMove(SimulationBoard.encodeMove(move[0], move[1]), _piece);
+			if (_isPondering && position.getGameState() == GameState.NOWIN) {
+				_engine.ponder(position, ponderStopped);
 			}
-		}
-		// After running out of time, chooses the best move from the tree.
-		this.chooseBestChild(game);
+		});
 	}
 
 	/**
-	 * This method contains the methods which make up the algorithm. It instantiates a dummy board
-	 * to be populated in playouts.
+	 * This method stops the player for good, e.g. when the game is restarted or the window is
+	 * closed. The search checks regularly whether it has been stopped, so it finishes promptly, and
+	 * its move is never played. The player's threads are then shut down.
 	 */
-	private boolean improveGameTree(TicTacToe game) {
-		MoveTreeNode node = _moveTree.getRoot();
-
-		if (game.getBoard().getIsFirstMove()) {
-			_dummyBoard = new Board(_gameSetting, true);
-		} else {
-			_dummyBoard = new Board(_gameSetting, true, game.getBoard());
+	public void stop() {
+		if (_stopped != null) {
+			_stopped.set(true);
+		}
+		if (_ponderStopped != null) {
+			_ponderStopped.set(true);
+		}
+		if (_moveExecutor != null) {
+			// The engine is shut down on the move thread, after its search has finished.
+			_moveExecutor.execute(() -> _engine.shutdown());
+			_moveExecutor.shutdown();
+			_moveExecutor = null;
 		}
-		// These methods are explained in their respective comments.
-		node = this.traverseTree(node);
-		this.playout(this.expand(node));
-		return false;
 	}
 
 	/**
-	 * This method travels down the tree until it finds a viable node to expand and play out. It
-	 * then places that move on the dummy board and returns the tree node.
+	 * This method returns what the engine found when it last chose a move for this player, or null
+	 * if it has not chosen one yet.
 	 */
-	private MoveTreeNode traverseTree(MoveTreeNode node) {
-		while (_dummyBoard.getLegalMoves().size() == node.getChildren().size() && node.getChildren().size() != 0) {
-			// Chooses the best child via the UCB1 algorithm.
-			node = this.selectUCB(node.getChildren());
-			this.playDummyBoard(node.getMove(), node.getPiece());
-		}
-		return node;
+	public SearchResult getLastSearchResult() {
+		return _lastSearchResult;
 	}
 
 	/**
-	 * This method expands the tree by one node and then returns that node.
+	 * This method returns how many nodes of the game trees were kept for the next move, added up
+	 * over all of the player's turns so far (see SearchResult.getNumNodesRetained()).
 	 */
-	private MoveTreeNode expand(MoveTreeNode node) {
-		int[] nextMove = new int[2];
-		boolean[] win = Board.checkWin(_dummyBoard, node.getPiece(), _gameSetting);
-		// Marks game over states appropriately.
-		if (win[0]) {
-			node.setAsGameOver();
-		} else {
-			boolean included = false;
-			// This loop finds a move in the legal moves array that is not already present in the
-			// tree.
-			for (int[] legalMove : _dummyBoard.getLegalMoves()) {
-				included = false;
-				for (MoveTreeNode n : node.getChildren()) {
-					if (Arrays.equals(n.getMove(), legalMove)) {
-						included = true;
-					}
-				}
-				if (!included) {
-					nextMove = legalMove;
-					break;
-				}
-			}
-			// Adds the child node.
-			node = node.addChild(nextMove);
-			// Places the move of that node.
-			this.playDummyBoard(node.getMove(), node.getPiece());
-		}
-		/*
-		 * This if statement adds some weighting to the Ultimate game. Since finishing a small board
-		 * doesn't end the game and since the game tree can only go so far down in 800ms, the AI is
-		 * not strongly incentivised to finish boards. This helps with that.
-		 */
-		if (_gameSetting == GameSetting.ULTIMATE && Board.checkThreeByThreeWin(3 * (node.getMove()[0] / 3),
-				3 * (node.getMove()[1] / 3), _dummyBoard.getBoardArray()) == GameState.WIN) {
-			node.setAsSmallBoardWin();
-			// Disincentivises moving the user to an already won board and therefore allowing them
-			// to move anywhere.
-		} else if (_gameSetting == GameSetting.ULTIMATE
-				&& _dummyBoard.getBoardsWon()[node.getMove()[0] % 3][node.getMove()[1] % 3].getPiece() != null) {
-			node.setAsDesirable(-0.2);
-		}
-		return node;
+	public long getNumNodesRetained() {
+		return _numNodesRetained;
 	}
 
 	/**
-	 * This method performs a random playout until game over. It then calls backup() to propagate
-	 * statistics to the game tree.
+	 * This method returns how many nodes of the game trees were released, added up over all of the
+	 * player's turns so far: the re-root for the opponent's move and the one for the player's own
+	 * move each time (see SearchResult.getNumNodesFreed()).
 	 */
-	private void playout(MoveTreeNode node) {
-		boolean[] win = Board.checkWin(_dummyBoard, node.getPiece(), _gameSetting);
-		_currentSimulationPiece = TicTacToe.flipPiece(node.getPiece());
-		// Plays moves while the game is not won.
-		while (!win[0]) {	
-			// Chooses a random index for a move.
-			int rn = (new Random()).nextInt(_dummyBoard.getLegalMoves().size());
-			// Plays the move
-			this.playDummyBoard(_dummyBoard.getLegalMoves().get(rn), _currentSimulationPiece);
-			// Checks for win.
-			win = Board.checkWin(_dummyBoard, _currentSimulationPiece, _gameSetting);
-			this.flipPiece();
-		}
-		// Backpropagates if the game is won.
-		if (win[1]) {
-			this.backup(GameState.DRAW, node);
-		} else {
-			this.backup(_currentSimulationPiece == node.getPiece() ? GameState.LOSE : GameState.WIN, node);
-		}
+	public long getNumNodesFreed() {
+		return _numNodesFreed;
 	}
-	
+
 	/**
-	 * This method backs up the tree and propagates the game results into the statistics of the nodes.
+	 * This method returns the player's engine, e.g. to change its settings.
 	 */
-	private void backup(GameState gameState, MoveTreeNode node) {
-		int i = 0;
-		// This do while loop keeps going until the node with no parent (i.e. the root) is selected.
-		do {
-			if (gameState == GameState.DRAW) {
-				node.updateStat(gameState);
-			
-			// This part of the if/else statement updates alternating wins and losses up the tree.
-			} else if (i % 2 == 0) {
-				node.updateStat(gameState);
-			} else {
-				node.updateStat(gameState == GameState.WIN ? GameState.LOSE : GameState.WIN);
-			}
-			node = node.getParent();
-			i++;
-		} while (node != null);
+	public Engine getEngine() {
+		return _engine;
 	}
-	
-	/**
-	 * This method chooses the most valuable child from the top level children in the game tree
-	 */
-	private void chooseBestChild(TicTacToe game) {
-		MoveTreeNode bestMove = _moveTree.getRoot().getChildren()
-				.get((new Random()).nextInt(_moveTree.getRoot().getChildren().size()));
-		// This loops through all the top level nodes and finds the best, according to win rate.
-		for (MoveTreeNode n : _moveTree.getRoot().getChildren()) {
-			bestMove = (double) n.getWins() / n.getNumPlayouts() > (double) bestMove.getWins()
-					/ bestMove.getNumPlayouts() ? n : bestMove;
-		}
-		// Plays the best move
-		this.move(game, Board.findBoardSize(_gameSetting), bestMove.getMove()[0], bestMove.getMove()[1]);
-		// Trims the tree, removing the other moves and their child branches.
-		_moveTree.setRoot(bestMove);
-		game.switchPlayer();
 
-	}
-	
 	/**
-	 * This method selects the best child of a tree node based on the UCB1 algorithm
+	 * This method returns the thread the player thinks on, creating it the first time. It runs one
+	 * move at a time and hands the search itself to the engine's threads.
 	 */
-	private MoveTreeNode selectUCB(ArrayList<MoveTreeNode> nodes) {
-		MoveTreeNode bestScored = nodes.get(0);
-		for (MoveTreeNode n : nodes) {
-			bestScored = n.getUCBStat() > bestScored.getUCBStat() ? n : bestScored;
+	private ExecutorService getMoveExecutor() {
+		if (_moveExecutor == null) {
+			_moveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "ComputerPlayer move");
+				thread.setDaemon(true);
+				return thread;
+			});
 		}
-		return bestScored;
+		return _moveExecutor;
 	}
 
 	/**
-	 * This method flips the current simulation piece.
+	 * This method sets whether the player ponders: keeps searching on the opponent's time, from the
+	 * position after its own move. This is only worthwhile against a human, since two computers
+	 * pondering would just take threads from each other.
 	 */
-	private void flipPiece() {
-		_currentSimulationPiece = TicTacToe.flipPiece(_currentSimulationPiece);
+	public void setPondering(boolean isPondering) {
+		_isPondering = isPondering;
 	}
-	
+
 	/**
 	 * This method gets the player's name, which is always "Computer" since the player is always a computer.
 	 */
@@ -290,15 +192,4 @@ public class ComputerPlayer extends Player {
 	public boolean isComputer() {
 		return true;
 	}
-	
-	/**
-	 * This method bundles the required actions to place a piece on the dummy board.
-	 */
-	private void playDummyBoard(int[] move, Piece piece) {
-		_dummyBoard.getBoardArray()[move[0]][move[1]].setPiece(piece);
-		if (_gameSetting == GameSetting.ULTIMATE) {
-			Board.checkFinishedBoards(_dummyBoard, piece);
-		}
-		_dummyBoard.setPreviousMove(move);
-	}
 }
@@ -8,4 +8,26 @@ public class Constants {
 	public static final int GAME_SIDE_LENGTH = 603;
 	public static final int STAGE_WIDTH = 603;
 	public static final int STAGE_HEIGHT = 603 + STATUS_BAR_HEIGHT;
+	// The number of threads the computer player searches on by default.
+	public static final int COMPUTER_THREADS = Runtime.getRuntime().availableProcessors();
+	// The number of rollouts played from each leaf in the computer player's leaf parallel mode.
+	public static final int ROLLOUT_BATCH_SIZE = 32;
+	// The number of positions the computer player's transposition tables can hold between them (16
+	// bytes each). Each game tree's table gets an equal share, rounded up to a power of two.
+	public static final int TRANSPOSITION_TABLE_SIZE = 1 << 18;
+	// The most game tree nodes a computer player keeps (about 26 bytes each).
+	public static final int COMPUTER_NODE_BUDGET = 1 << 22;
+	// The share of the free heap a computer player's game trees may grow into.
+	public static final double NODE_BUDGET_HEAP_SHARE = 0.25;
+	// The computer player's clock for a whole game and the time added back after each of its moves,
+	// in nanoseconds. This comes to about 800 milliseconds for the first move of an Ultimate game.
+	public static final long COMPUTER_GAME_TIME = 12000000000L;
+	public static final long COMPUTER_TIME_INCREMENT = 300000000;
+	// The number of playable squares at or below which the computer player tries to solve a position
+	// exactly. Most positions with this many are solved in well under the time for a move.
+	public static final int SOLVER_THRESHOLD = 28;
+	// The share of a move's time budget the endgame solver may use before the search takes over.
+	public static final double SOLVER_TIME_SHARE = 0.5;
+	// The number of positions the endgame solver's transposition table can hold (12 bytes each).
+	public static final int SOLVER_TABLE_SIZE = 1 << 20;
 }
@@ -0,0 +1,236 @@
+package TicTacToe;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class solves positions near the end of a game exactly, so that the engine can play them
+ * perfectly instead of relying on random playouts. It is a negamax alpha-beta search over the
+ * results win (1), draw (0) and loss (-1), which only has to tell those three apart rather than
+ * score positions, so it cuts off as soon as it finds a win.
+ *
+ * The moves are tried in an order that tends to find the best one first: the best move found for
+ * the position before (from the transposition table), then moves that win a small board, then the
+ * rest, with moves that send the opponent to a finished board (letting them move anywhere) last. A
+ * move that wins the game at once is played without looking at the others.
+ *
+ * Solved positions are kept in a transposition table, indexed by SimulationBoard.getHash(), with
+ * whether their value is exact or only a bound. The table is kept from one move to the next, since
+ * the positions of one move's search come up again in the next.
+ *
+ * The search gives up once a deadline passes, so that the engine can fall back to Monte Carlo
+ * Tree Search for the rest of its time.
+ */
+public class EndgameSolver {
+	// How many positions are searched between looks at the clock.
+	private static final int TIME_CHECK_INTERVAL = 1024;
+	// The kinds of bound a table entry's value can be.
+	private static final int EXACT = 0;
+	private static final int LOWER_BOUND = 1;
+	private static final int UPPER_BOUND = 2;
+	// The order scores of the kinds of move (see the class comment).
+	private static final int TABLE_MOVE_SCORE = 3;
+	private static final int SMALL_BOARD_WIN_SCORE = 2;
+	private static final int QUIET_MOVE_SCORE = 1;
+	private static final int FREE_MOVE_SCORE = 0;
+
+	private GameSetting _gameSetting;
+	private SimulationBoard _board;
+	private long[] _keys;
+	// Each entry packs the value plus one (2 bits), the kind of bound (2 bits) and the best move plus
+	// one (7 bits), so that an empty entry is 0.
+	private int[] _entries;
+	private int _tableMask;
+	// The moves and their order scores for each ply of the search, so nothing is allocated per node.
+	private int[][] _moves;
+	private int[][] _scores;
+	private long _deadline;
+	private AtomicBoolean _stopped;
+	private boolean _isAborted;
+	private long _numPositions;
+	private int _bestMove;
+	private int _result;
+
+	/**
+	 * This constructor makes a solver for the given game setting with a transposition table of the
+	 * given size, which is rounded down to a power of two.
+	 */
+	public EndgameSolver(GameSetting gameSetting, int tableSize) {
+		_gameSetting = gameSetting;
+		_board = new SimulationBoard(gameSetting);
+		int size = Integer.highestOneBit(Math.max(1, tableSize));
+		_keys = new long[size];
+		_entries = new int[size];
+		_tableMask = size - 1;
+		int numSquares = gameSetting.getBoardSize() * gameSetting.getBoardSize();
+		_moves = new int[numSquares + 1][numSquares];
+		_scores = new int[numSquares + 1][numSquares];
+	}
+
+	/**
+	 * This method solves the given position, which must have the given piece to move and the game
+	 * still going on. It returns true if it finished before the deadline (as given by
+	 * System.nanoTime()) and before stopped was set, in which case getBestMove() and getResult() give
+	 * the answer.
+	 */
+	public boolean solve(SimulationBoard position, Piece piece, long deadline, AtomicBoolean stopped) {
+		_board.copyBoard(position);
+		_deadline = deadline;
+		_stopped = stopped;
+		_isAborted = false;
+		_numPositions = 0;
+		_bestMove = -1;
+		_result = this.search(piece, -1, 1, 0);
+		return !_isAborted;
+	}
+
+	/**
+	 * This method returns the best move found by the last successful solve(), encoded as in
+	 * SimulationBoard.
+	 */
+	public int getBestMove() {
+		return _bestMove;
+	}
+
+	/**
+	 * This method returns the result of the position solved by the last successful solve(), for the
+	 * piece to move: WIN, DRAW or LOSE, with best play from both sides.
+	 */
+	public GameState getResult() {
+		return _result == 1 ? GameState.WIN : _result == 0 ? GameState.DRAW : GameState.LOSE;
+	}
+
+	/**
+	 * This method returns how many positions the last solve() searched.
+	 */
+	public long getNumPositions() {
+		return _numPositions;
+	}
+
+	/**
+	 * This method works out the value of the board's position for the given piece to move, between
+	 * alpha and beta: the exact value if it is strictly between them, and otherwise a bound on the
+	 * same side. At the root (ply 0) it also notes the best move. If the deadline passes, it returns
+	 * at once with a meaningless value and sets _isAborted.
+	 */
+	private int search(Piece piece, int alpha, int beta, int ply) {
+		_numPositions++;
+		if (_numPositions % TIME_CHECK_INTERVAL == 0
+				&& (System.nanoTime() - _deadline > 0 || _stopped.get())) {
+			_isAborted = true;
+		}
+		if (_isAborted) {
+			return 0;
+		}
+
+		// Uses what the table knows about the position. At the root the best move is needed as well
+		// as the value, so the search always goes on.
+		long hash = _board.getHash();
+		int index = (int) hash & _tableMask;
+		int tableMove = -1;
+		if (_keys[index] == hash && _entries[index] != 0) {
+			int entry = _entries[index];
+			int value = (entry & 3) - 1;
+			int bound = (entry >>> 2) & 3;
+			tableMove = (entry >>> 4) - 1;
+			if (ply > 0 && (bound == EXACT || (bound == LOWER_BOUND && value >= beta)
+					|| (bound == UPPER_BOUND && value <= alpha))) {
+				return value;
+			}
+		}
+
+		int numMoves = this.orderMoves(piece, tableMove, ply);
+		// A move that wins the game at once was found while ordering the moves.
+		if (numMoves == -1) {
+			this.store(hash, 1, EXACT, _moves[ply][0]);
+			return 1;
+		}
+
+		int originalAlpha = alpha;
+		int bestValue = -2;
+		int bestMove = -1;
+		for (int i = 0; i < numMoves; i++) {
+			int move = _moves[ply][i];
+			_board.makeMove(move, piece);
+			int value;
+			if (_board.getGameState() == GameState.DRAW) {
+				value = 0;
+			} else {
+				value = -this.search(piece.flip(), -beta, -alpha, ply + 1);
+			}
+			_board.undoMove();
+			if (_isAborted) {
+				return 0;
+			}
+			if (value > bestValue) {
+				bestValue = value;
+				bestMove = move;
+			}
+			alpha = Math.max(alpha, value);
+			if (alpha >= beta) {
+				break;
+			}
+		}
+
+		if (ply == 0) {
+			_bestMove = bestMove;
+		}
+		int bound = bestValue <= originalAlpha ? UPPER_BOUND : bestValue >= beta ? LOWER_BOUND : EXACT;
+		this.store(hash, bestValue, bound, bestMove);
+		return bestValue;
+	}
+
+	/**
+	 * This method fills in the legal moves for a ply of the search, sorted best first (see the class
+	 * comment), and returns how many there are. If one of them wins the game at once, it is put first,
+	 * noted as the best move at the root, and -1 is returned instead.
+	 */
+	private int orderMoves(Piece piece, int tableMove, int ply) {
+		int[] moves = _moves[ply];
+		int[] scores = _scores[ply];
+		int numMoves = _board.getNumLegalMoves();
+		for (int i = 0; i < numMoves; i++) {
+			int move = _board.getLegalMove(i);
+			_board.makeMove(move, piece);
+			int score;
+			if (_board.getGameState() == GameState.WIN) {
+				_board.undoMove();
+				moves[0] = move;
+				if (ply == 0) {
+					_bestMove = move;
+				}
+				return -1;
+			} else if (move == tableMove) {
+				score = TABLE_MOVE_SCORE;
+			} else if (_gameSetting == GameSetting.ULTIMATE
+					&& _board.isSmallBoardWon(SimulationBoard.decodeX(move), SimulationBoard.decodeY(move))) {
+				score = SMALL_BOARD_WIN_SCORE;
+			} else if (_gameSetting == GameSetting.ULTIMATE && _board.getForcedBoard() == -1) {
+				score = FREE_MOVE_SCORE;
+			} else {
+				score = QUIET_MOVE_SCORE;
+			}
+			_board.undoMove();
+
+			// Insertion sort, which is quick for so few moves.
+			int j = i;
+			while (j > 0 && scores[j - 1] < score) {
+				moves[j] = moves[j - 1];
+				scores[j] = scores[j - 1];
+				j--;
+			}
+			moves[j] = move;
+			scores[j] = score;
+		}
+		return numMoves;
+	}
+
+	/**
+	 * This method adds a position's value to the transposition table, replacing whatever was in its
+	 * slot.
+	 */
+	private void store(long hash, int value, int bound, int bestMove) {
+		int index = (int) hash & _tableMask;
+		_keys[index] = hash;
+		_entries[index] = (value + 1) | bound << 2 | (bestMove + 1) << 4;
+	}
+}
@@ -0,0 +1,737 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is the computer's engine: given a position and a time budget, it searches for a move
+ * and returns it along with some statistics about the search (see SearchResult). The search is a
+ * Monte Carlo Tree Search, which lives in the MoveSearch class; this class decides how many
+ * searches there are, runs them on its threads and combines their results.
+ *
+ * The engine only uses the purely logical classes (SimulationBoard, MoveTree, MoveSearch,
+ * TranspositionTable, EndgameSolver and the Piece, GameState and GameSetting enums), none of which
+ * depend on JavaFX. It can therefore run without a window, e.g. on a server or in a benchmark. The
+ * ComputerPlayer uses one to play in the JavaFX game.
+ *
+ * Near the end of the game, when few squares are left to play, the engine first tries to solve the
+ * position exactly with an EndgameSolver, and only searches the trees if that takes too long.
+ *
+ * Every engine adds to the EngineMetrics, which can be read over JMX while the program runs.
+ *
+ * The engine keeps its game trees from one search to the next. If it is given the position after
+ * its own last move and one reply, everything learnt about that reply is kept; for any other
+ * position it starts again from scratch.
+ */
+public class Engine {
+	// How often the engine checks whether its searches can stop, in nanoseconds.
+	private static final long SETTLED_CHECK_INTERVAL = 5000000;
+
+	private GameSetting _gameSetting;
+	private Piece _piece;
+	private MoveTree[] _moveTrees;
+	private MoveSearch[] _searches;
+	private SearchMode _searchMode;
+	private int _batchSize;
+	private boolean _useTranspositions;
+	private int _nodeBudget;
+	private long _iterationBudget;
+	private boolean _isSeeded;
+	private long _seed;
+	private Random _random;
+	private int _numThreads;
+	private ExecutorService _executor;
+	private EngineMetrics _metrics;
+	private int _solverThreshold;
+	private EndgameSolver _endgameSolver;
+	// The move the searches last settled on by its lead in playouts (see isSettled()), or -1.
+	private int _settledMove;
+
+	/**
+	 * This enum describes how the engine's search is split across threads. In ROOT_PARALLEL mode
+	 * each thread grows its own game tree and the statistics of the trees are added together at the
+	 * end. In TREE_PARALLEL mode all the threads grow one deeper tree together. In LEAF_PARALLEL mode
+	 * one thread grows the tree and all the threads play a batch of rollouts from each new leaf.
+	 */
+	public enum SearchMode {
+		ROOT_PARALLEL, TREE_PARALLEL, LEAF_PARALLEL
+	}
+
+	/**
+	 * This constructor makes an engine which plays the given piece in the given game, with the
+	 * default settings from Constants.
+	 */
+	public Engine(GameSetting gameSetting, Piece piece) {
+		_gameSetting = gameSetting;
+		_piece = piece;
+		_random = new Random();
+		_numThreads = Constants.COMPUTER_THREADS;
+		_searchMode = SearchMode.ROOT_PARALLEL;
+		_batchSize = Constants.ROLLOUT_BATCH_SIZE;
+		_useTranspositions = true;
+		_nodeBudget = Constants.COMPUTER_NODE_BUDGET;
+		_iterationBudget = Long.MAX_VALUE;
+		_metrics = EngineMetrics.getInstance();
+		_solverThreshold = Constants.SOLVER_THRESHOLD;
+	}
+
+	/**
+	 * This method searches the given position, which must have the engine's piece to move, for the
+	 * time budget (in nanoseconds) and returns the move it chose.
+	 */
+	public SearchResult search(SimulationBoard position, long timeBudget) {
+		return this.search(position, timeBudget, new AtomicBoolean(false));
+	}
+
+	/**
+	 * This method runs each of the engine's searches on its own thread from the given position until
+	 * the time budget or the iteration budget runs out or stopped is set, and then chooses a move from their combined
+	 * statistics. It returns null if the engine was stopped before anything was searched.
+	 */
+	public SearchResult search(SimulationBoard position, long timeBudget, AtomicBoolean stopped) {
+		return this.search(position, timeBudget, timeBudget, stopped);
+	}
+
+	/**
+	 * This method searches the given position with the time the time manager gives it (see the
+	 * TimeManager class), and takes the time it used off the time manager's clock.
+	 */
+	public SearchResult search(SimulationBoard position, TimeManager timeManager, AtomicBoolean stopped) {
+		long startTime = System.nanoTime();
+		SearchResult result = this.search(position, timeManager.getMoveBudget(position),
+				timeManager.getMaxMoveBudget(position), stopped);
+		timeManager.useTime(System.nanoTime() - startTime);
+		return result;
+	}
+
+	/**
+	 * This method searches the given position for the time budget, and then for up to the maximum
+	 * time budget if the time manager thinks the search has not settled on a move yet.
+	 */
+	private SearchResult search(SimulationBoard position, long timeBudget, long maxTimeBudget, AtomicBoolean stopped) {
+		SearchEvent event = new SearchEvent();
+		event.begin();
+		long startTime = System.nanoTime();
+		// Sets up the searches the first time or if their settings changed. Otherwise prunes the game
+		// trees for the previous move (normally made by the opponent), keeping everything learnt about
+		// it while pondering.
+		long numNodesFreed = 0;
+		if (_searches == null) {
+			this.setUpSearches();
+		} else if (position.getPreviousMove() != -1) {
+			for (MoveTree moveTree : _moveTrees) {
+				moveTree.setRootToMove(new int[] { SimulationBoard.decodeX(position.getPreviousMove()),
+						SimulationBoard.decodeY(position.getPreviousMove()) });
+				numNodesFreed += moveTree.getNumNodesFreed();
+			}
+		}
+		for (MoveTree moveTree : _moveTrees) {
+			moveTree.setRootToPosition(position.getHash(), _piece.flip());
+			numNodesFreed += moveTree.getNumNodesFreed();
+			if (moveTree.getTranspositionTable() != null) {
+				moveTree.getTranspositionTable().resetCounts();
+			}
+		}
+
+		long numNodesReused = 0;
+		for (MoveTree moveTree : _moveTrees) {
+			numNodesReused += moveTree.getNumNodes();
+		}
+
+		// Improves the trees until the time runs out, timing the phases of the searches only if the
+		// event is being recorded.
+		for (MoveSearch search : _searches) {
+			search.setPosition(position);
+			search.setTimingPhases(event.isEnabled());
+		}
+		long numOldPlayouts = this.countRootPlayouts();
+
+		// Near the end of the game, tries to solve the position first. A search limited by iterations
+		// does not, since whether the solver finishes in time depends on the machine.
+		if (position.getNumPlayableSquares() <= _solverThreshold && _iterationBudget == Long.MAX_VALUE) {
+			SearchResult result = this.solve(position, startTime, timeBudget, stopped, numNodesReused, numNodesFreed);
+			if (result != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					this.recordSearch(event, result, numNodesReused);
+				}
+				return result;
+			}
+		}
+
+		// A search limited by iterations always runs all of them, so that it is repeatable. The trees'
+		// rate of playouts is measured from here, leaving out any time the solver took.
+		SimulationBoard settledPosition = _iterationBudget == Long.MAX_VALUE ? position : null;
+		long treeStartTime = System.nanoTime();
+		_settledMove = -1;
+		this.runSearches(startTime, timeBudget, _iterationBudget, stopped, settledPosition, treeStartTime,
+				numOldPlayouts);
+
+		// After running out of time, chooses the best move from the trees, unless it is worth
+		// searching for longer.
+		int[] wins = new int[81];
+		int[] playouts = new int[81];
+		int best = this.chooseSettledOrBestChild(wins, playouts);
+		if (best != -1 && maxTimeBudget > timeBudget && !stopped.get()
+				&& !this.isIterationBudgetUsed(_iterationBudget) && TimeManager.isUnsettled(playouts, best)) {
+			this.runSearches(startTime, maxTimeBudget, _iterationBudget, stopped, settledPosition, treeStartTime,
+					numOldPlayouts);
+			Arrays.fill(wins, 0);
+			Arrays.fill(playouts, 0);
+			best = this.chooseSettledOrBestChild(wins, playouts);
+		}
+		// If nothing was played out without the engine being stopped (e.g. the budget ran out at once),
+		// one more iteration gives the trees a move to choose.
+		if (best == -1 && !stopped.get()) {
+			_searches[0].improveGameTree();
+			best = this.chooseBestChild(wins, playouts);
+		}
+		if (best == -1) {
+			return null;
+		}
+		long numNewPlayouts = this.countRootPlayouts() - numOldPlayouts;
+		long numTranspositionLookups = 0;
+		long numTranspositionHits = 0;
+		for (MoveTree moveTree : _moveTrees) {
+			if (moveTree.getTranspositionTable() != null) {
+				numTranspositionLookups += moveTree.getTranspositionTable().getNumLookups();
+				numTranspositionHits += moveTree.getTranspositionTable().getNumHits();
+			}
+		}
+		long numNodes = 0;
+		for (MoveTree moveTree : _moveTrees) {
+			numNodes += moveTree.getNumNodes();
+		}
+
+		long numPlayouts = 0;
+		for (int move = 0; move < 81; move++) {
+			numPlayouts += playouts[move];
+		}
+		int[] bestMove = new int[] { SimulationBoard.decodeX(best), SimulationBoard.decodeY(best) };
+		// Trims the trees, removing the other moves and their child branches.
+		long numNodesRetained = 0;
+		for (MoveTree moveTree : _moveTrees) {
+			moveTree.setRootToMove(bestMove);
+			numNodesRetained += moveTree.getNumNodesRetained();
+			numNodesFreed += moveTree.getNumNodesFreed();
+		}
+		SearchResult result = new SearchResult(bestMove, wins[best], playouts[best], numPlayouts, numNewPlayouts,
+				numNodes, numTranspositionLookups, numTranspositionHits, numNodesRetained, numNodesFreed,
+				System.nanoTime() - startTime);
+		_metrics.recordSearch(result, numNodesReused);
+		event.end();
+		if (event.shouldCommit()) {
+			this.recordSearch(event, result, numNodesReused);
+		}
+		return result;
+	}
+
+	/**
+	 * This method solves the given position with the endgame solver, giving it a share of the time
+	 * budget, and returns the result if it found a win or a draw. It returns null if the solver ran
+	 * out of time or was stopped, or if it found the game lost, since then the trees' choice is the
+	 * likelier to give the opponent a chance to go wrong.
+	 */
+	private SearchResult solve(SimulationBoard position, long startTime, long timeBudget, AtomicBoolean stopped,
+			long numNodesReused, long numNodesFreed) {
+		if (_endgameSolver == null) {
+			_endgameSolver = new EndgameSolver(_gameSetting, Constants.SOLVER_TABLE_SIZE);
+		}
+		long deadline = startTime + (long) (Math.min(timeBudget, Long.MAX_VALUE / 2) * Constants.SOLVER_TIME_SHARE);
+		if (!_endgameSolver.solve(position, _piece, deadline, stopped)
+				|| _endgameSolver.getResult() == GameState.LOSE) {
+			return null;
+		}
+
+		int best = _endgameSolver.getBestMove();
+		int[] bestMove = new int[] { SimulationBoard.decodeX(best), SimulationBoard.decodeY(best) };
+		long numNodes = 0;
+		long numNodesRetained = 0;
+		for (MoveTree moveTree : _moveTrees) {
+			numNodes += moveTree.getNumNodes();
+			moveTree.setRootToMove(bestMove);
+			numNodesRetained += moveTree.getNumNodesRetained();
+			numNodesFreed += moveTree.getNumNodesFreed();
+		}
+		// The move counts as played out once, with its proven result.
+		SearchResult result = new SearchResult(bestMove, _endgameSolver.getResult() == GameState.WIN ? 1 : 0, 1, 1,
+				0, numNodes, 0, 0, numNodesRetained, numNodesFreed, System.nanoTime() - startTime);
+		_metrics.recordSearch(result, numNodesReused);
+		return result;
+	}
+
+	/**
+	 * This method keeps improving the game trees from the position after the engine's own move
+	 * (which must be the move search() last returned) while the opponent is thinking, until stopped is
+	 * set. When the opponent moves, search() moves the trees down to their move as usual, so the
+	 * statistics gathered for it are kept.
+	 */
+	public void ponder(SimulationBoard position, AtomicBoolean stopped) {
+		if (_searches == null) {
+			return;
+		}
+		for (MoveSearch search : _searches) {
+			search.setPosition(position);
+			search.setTimingPhases(false);
+		}
+		this.runSearches(System.nanoTime(), Long.MAX_VALUE, Long.MAX_VALUE, stopped, null, 0, 0);
+	}
+
+	/**
+	 * This method shuts down the engine's threads. It is called when the engine is no longer
+	 * needed, once any search has finished. The searches are dropped as well, since in leaf parallel
+	 * mode they hold on to the threads, so if the engine is used again it starts afresh.
+	 */
+	public void shutdown() {
+		if (_executor != null) {
+			_executor.shutdown();
+			_executor = null;
+		}
+		_searches = null;
+	}
+
+	/**
+	 * This method runs each of the engine's searches on its own thread from the position they were
+	 * last given until the time budget runs out, each has run iterationBudget iterations or stopped is
+	 * set, and waits for them all to finish. The searches also stop when a tree fills its node budget;
+	 * the tree is then pruned and they start again.
+	 *
+	 * If settledPosition (the position being searched) is given, the searches also stop as soon as
+	 * the move they would choose can no longer change (see isSettled()), so that the rest of the time
+	 * is saved. numStartPlayouts is the number of playouts through the roots at treeStartTime, when
+	 * the trees started searching the position.
+	 */
+	private void runSearches(long startTime, long timeBudget, long iterationBudget, AtomicBoolean stopped,
+			SimulationBoard settledPosition, long treeStartTime, long numStartPlayouts) {
+		this.updateNodeBudgets();
+		// The searches are stopped through their own flag, so that they can be stopped early without
+		// setting the caller's.
+		AtomicBoolean halted = new AtomicBoolean(stopped.get());
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (MoveSearch search : _searches) {
+			tasks.add(Executors.callable(() -> {
+				long threadStartTime = System.nanoTime();
+				long startBytes = EngineMetrics.getAllocatedBytes();
+				search.search(startTime, timeBudget, iterationBudget, halted);
+				_metrics.recordAllocation(EngineMetrics.getAllocatedBytes() - startBytes,
+						System.nanoTime() - threadStartTime);
+			}));
+		}
+		do {
+			ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (Callable<Object> task : tasks) {
+				futures.add(this.getExecutor().submit(task));
+			}
+			try {
+				// Checks every so often, while waiting for the searches, whether they should stop.
+				for (Future<Object> future : futures) {
+					while (true) {
+						try {
+							future.get(SETTLED_CHECK_INTERVAL, TimeUnit.NANOSECONDS);
+							break;
+						} catch (TimeoutException e) {
+							if (stopped.get() || (settledPosition != null
+									&& this.isSettled(settledPosition, startTime, timeBudget, treeStartTime,
+											numStartPlayouts))) {
+								halted.set(true);
+							}
+						}
+					}
+				}
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException("The computer's search failed", e);
+			}
+			for (MoveTree moveTree : _moveTrees) {
+				if (moveTree.isFull()) {
+					moveTree.pruneColdSubtrees();
+				}
+			}
+		} while (!halted.get() && !stopped.get() && System.nanoTime() - startTime < timeBudget
+				&& !this.isIterationBudgetUsed(iterationBudget) && !this.areRootsProven());
+	}
+
+	/**
+	 * This method returns whether the result of the position at the root of every game tree is
+	 * proven, so that the searches have nothing left to do.
+	 */
+	private boolean areRootsProven() {
+		for (MoveTree moveTree : _moveTrees) {
+			if (!moveTree.isProven(moveTree.getRoot())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This method returns whether searching the given position any longer could not change the move
+	 * the engine would choose, because:
+	 * - the result of the position is proven, including when one of the moves is a proven win;
+	 * - there is only one legal move, and it has been played out; or
+	 * - the move with the best win rate is also the most played out, and so far ahead of the next
+	 * that the other moves could not catch up in the time left, at the rate the trees have been
+	 * playing out since treeStartTime. A move the search keeps playing out is one it keeps finding
+	 * best, so this is when the choice has settled (see TimeManager.isUnsettled()). Its win rate
+	 * could still be overtaken, though, so the move is noted in _settledMove to be played on its
+	 * playouts alone.
+	 */
+	private boolean isSettled(SimulationBoard position, long startTime, long timeBudget, long treeStartTime,
+			long numStartPlayouts) {
+		for (MoveTree moveTree : _moveTrees) {
+			if (moveTree.isProven(moveTree.getRoot())) {
+				return true;
+			}
+		}
+		int[] wins = new int[81];
+		int[] playouts = new int[81];
+		GameState[] provenResults = new GameState[81];
+		this.addUpRootMoves(wins, playouts, provenResults);
+		int mostPlayedOut = 0;
+		for (int move = 0; move < 81; move++) {
+			if (playouts[move] > playouts[mostPlayedOut]) {
+				mostPlayedOut = move;
+			}
+		}
+		if (playouts[mostPlayedOut] == 0) {
+			return false;
+		}
+		if (position.getNumLegalMoves() == 1) {
+			return true;
+		}
+
+		int nextMostPlayedOut = -1;
+		double mostPlayedOutValue = Engine.getMoveValue(wins[mostPlayedOut], playouts[mostPlayedOut],
+				provenResults[mostPlayedOut]);
+		for (int move = 0; move < 81; move++) {
+			if (playouts[move] == 0) {
+				continue;
+			}
+			if (Engine.getMoveValue(wins[move], playouts[move], provenResults[move]) > mostPlayedOutValue) {
+				return false;
+			}
+			if (move != mostPlayedOut && (nextMostPlayedOut == -1 || playouts[move] > playouts[nextMostPlayedOut])) {
+				nextMostPlayedOut = move;
+			}
+		}
+
+		long now = System.nanoTime();
+		long searchTime = now - treeStartTime;
+		if (timeBudget == Long.MAX_VALUE || searchTime <= 0) {
+			return false;
+		}
+		double remainingPlayouts = (double) (this.countRootPlayouts() - numStartPlayouts)
+				* (startTime + timeBudget - now) / searchTime;
+		int lead = playouts[mostPlayedOut] - (nextMostPlayedOut == -1 ? 0 : playouts[nextMostPlayedOut]);
+		if (lead <= remainingPlayouts) {
+			return false;
+		}
+		_settledMove = mostPlayedOut;
+		return true;
+	}
+
+	/**
+	 * This method fills in a search's JFR event from the search's result and the statistics kept by
+	 * each MoveSearch, and commits it.
+	 */
+	private void recordSearch(SearchEvent event, SearchResult result, long numNodesReused) {
+		long totalDepth = 0;
+		for (MoveSearch search : _searches) {
+			event.iterations += search.getNumIterations();
+			event.nodesCreated += search.getNumNodesCreated();
+			totalDepth += search.getTotalDepth();
+			event.maxDepth = Math.max(event.maxDepth, search.getMaxDepth());
+			event.selectTime += search.getSelectTime();
+			event.expandTime += search.getExpandTime();
+			event.rolloutTime += search.getRolloutTime();
+			event.backupTime += search.getBackupTime();
+		}
+		event.nodesReused = numNodesReused;
+		event.averageDepth = event.iterations == 0 ? 0 : (double) totalDepth / event.iterations;
+		event.playoutsPerSecond = result.getNumNewPlayouts() / (result.getSearchTime() / 1e9);
+		event.moveX = result.getMove()[0];
+		event.moveY = result.getMove()[1];
+		event.visitShare = (double) result.getNumPlayouts() / result.getNumRootPlayouts();
+		// The score counts a win as 1, a draw as 0 and a loss as -1.
+		event.winRate = (result.getScore() + 1) / 2;
+		event.transpositionHitRate = result.getTranspositionHitRate();
+		event.commit();
+	}
+
+	/**
+	 * This method returns whether every search has run the given number of iterations.
+	 */
+	private boolean isIterationBudgetUsed(long iterationBudget) {
+		for (MoveSearch search : _searches) {
+			if (search.getNumIterations() < iterationBudget) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This method adds up the playouts through the roots of the game trees.
+	 */
+	private long countRootPlayouts() {
+		long numPlayouts = 0;
+		for (MoveTree moveTree : _moveTrees) {
+			numPlayouts += moveTree.getNumPlayouts(moveTree.getRoot());
+		}
+		return numPlayouts;
+	}
+
+	/**
+	 * This method shares the engine's node budget between its game trees. Each tree may also only
+	 * grow into a fixed share of the heap that is currently free, so that several engines in one
+	 * program leave each other (and the rest of the program) enough room. The transposition tables
+	 * are not counted against the budget: they are allocated up front with a fixed total size (see
+	 * makeMoveTree()), so they are already taken out of the free heap.
+	 */
+	private void updateNodeBudgets() {
+		Runtime runtime = Runtime.getRuntime();
+		long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		long affordableNodes = (long) (freeHeap * Constants.NODE_BUDGET_HEAP_SHARE) / MoveTree.BYTES_PER_NODE;
+		for (MoveTree moveTree : _moveTrees) {
+			long nodeBudget = Math.min(_nodeBudget / _moveTrees.length,
+					moveTree.getNumNodes() + affordableNodes / _moveTrees.length);
+			moveTree.setNodeBudget((int) nodeBudget);
+		}
+	}
+
+	/**
+	 * This method sets up the game trees and the searches which grow them. In root parallel mode,
+	 * every search has its own tree; in tree parallel mode, they all share one. In leaf parallel
+	 * mode there is only one search, which uses the other threads for its rollouts.
+	 */
+	private void setUpSearches() {
+		if (_searchMode == SearchMode.LEAF_PARALLEL) {
+			_moveTrees = new MoveTree[] { this.makeMoveTree(1) };
+			_searches = new MoveSearch[] { new MoveSearch(_moveTrees[0], _gameSetting, this.makeRandom(0), false) };
+			_searches[0].useLeafParallelRollouts(this.getExecutor(), _numThreads, _batchSize);
+			return;
+		}
+		int numTrees = _searchMode == SearchMode.TREE_PARALLEL ? 1 : _numThreads;
+		_moveTrees = new MoveTree[numTrees];
+		for (int i = 0; i < numTrees; i++) {
+			_moveTrees[i] = this.makeMoveTree(numTrees);
+		}
+		_searches = new MoveSearch[_numThreads];
+		for (int i = 0; i < _numThreads; i++) {
+			_searches[i] = new MoveSearch(_moveTrees[i % numTrees], _gameSetting, this.makeRandom(i),
+					_searchMode == SearchMode.TREE_PARALLEL);
+		}
+	}
+
+	/**
+	 * This method makes the random number generator for the given search. Each search has its own,
+	 * seeded from the engine's seed if it has one.
+	 */
+	private Random makeRandom(int search) {
+		if (_isSeeded) {
+			return new Random(_seed + search);
+		}
+		return new Random();
+	}
+
+	/**
+	 * This method makes an empty game tree for the engine, with its own transposition table if
+	 * transpositions are in use. The engine's table size is shared between its given number of
+	 * trees, like its node budget, so that the tables do not take more memory with more threads.
+	 */
+	private MoveTree makeMoveTree(int numTrees) {
+		MoveTree moveTree = new MoveTree(_piece.flip());
+		if (_useTranspositions) {
+			moveTree.setTranspositionTable(new TranspositionTable(Constants.TRANSPOSITION_TABLE_SIZE / numTrees));
+		}
+		return moveTree;
+	}
+
+	/**
+	 * This method finds the most valuable of the top level moves of the game trees (see
+	 * getMoveValue()) and returns it (encoded as in SimulationBoard), or -1 if none has been played
+	 * out. The wins and playouts for each move are added up across all the trees into the given arrays
+	 * before comparing them.
+	 */
+	private int chooseBestChild(int[] wins, int[] playouts) {
+		GameState[] provenResults = new GameState[81];
+		this.addUpRootMoves(wins, playouts, provenResults);
+		// Only moves which have been played out can be compared.
+		int[] moves = new int[81];
+		int numMoves = 0;
+		for (int move = 0; move < 81; move++) {
+			if (playouts[move] > 0) {
+				moves[numMoves] = move;
+				numMoves++;
+			}
+		}
+
+		// This only happens if the engine was stopped before anything was searched.
+		if (numMoves == 0) {
+			return -1;
+		}
+
+		int best = moves[_random.nextInt(numMoves)];
+		double bestValue = Engine.getMoveValue(wins[best], playouts[best], provenResults[best]);
+		// This loops through all the top level moves and finds the best.
+		for (int i = 0; i < numMoves; i++) {
+			double value = Engine.getMoveValue(wins[moves[i]], playouts[moves[i]], provenResults[moves[i]]);
+			if (value > bestValue) {
+				best = moves[i];
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * This method does the same as chooseBestChild(), except that if the searches stopped early
+	 * because one move's lead in playouts could not be caught (see isSettled()), that move is chosen.
+	 * Another move's win rate could still overtake it, so only the lead stays settled.
+	 */
+	private int chooseSettledOrBestChild(int[] wins, int[] playouts) {
+		int best = this.chooseBestChild(wins, playouts);
+		return _settledMove != -1 ? _settledMove : best;
+	}
+
+	/**
+	 * This static method returns how valuable a top level move is to the engine: its win rate (wins
+	 * minus losses, over playouts), or if its result is proven, 0 for a draw and more or less than any
+	 * win rate for a win or a loss.
+	 */
+	private static double getMoveValue(int wins, int playouts, GameState provenResult) {
+		if (provenResult == GameState.WIN) {
+			return 2;
+		} else if (provenResult == GameState.LOSE) {
+			return -2;
+		} else if (provenResult == GameState.DRAW) {
+			return 0;
+		}
+		return (double) wins / playouts;
+	}
+
+	/**
+	 * This method adds up the wins and playouts for each top level move across all the game trees,
+	 * into the given arrays (indexed by encoded move), and notes each move's result if any of the
+	 * trees has proven it (NOWIN otherwise).
+	 */
+	private void addUpRootMoves(int[] wins, int[] playouts, GameState[] provenResults) {
+		Arrays.fill(provenResults, GameState.NOWIN);
+		for (MoveTree moveTree : _moveTrees) {
+			int root = moveTree.getRoot();
+			for (int i = 0; i < moveTree.getNumChildren(root); i++) {
+				int child = moveTree.getFirstChild(root) + i;
+				wins[moveTree.getMove(child)] += moveTree.getWins(child);
+				playouts[moveTree.getMove(child)] += moveTree.getNumPlayouts(child);
+				if (moveTree.isProven(child)) {
+					provenResults[moveTree.getMove(child)] = moveTree.getProvenResult(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method returns the pool of threads the searches run on, creating it the first time. The
+	 * threads are daemons so that they do not stop the application from exiting.
+	 */
+	private ExecutorService getExecutor() {
+		if (_executor == null) {
+			_executor = Executors.newFixedThreadPool(_numThreads, runnable -> {
+				Thread thread = new Thread(runnable, "Engine search");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return _executor;
+	}
+
+	/**
+	 * This method returns the piece the engine plays.
+	 */
+	public Piece getPiece() {
+		return _piece;
+	}
+
+	/**
+	 * This method sets the most nodes the engine's game trees may hold between them. The trees may
+	 * be given less if the heap is short of room.
+	 */
+	public void setNodeBudget(int nodeBudget) {
+		_nodeBudget = nodeBudget;
+	}
+
+	/**
+	 * This method sets the most iterations each of the engine's searches runs for a move, on top of
+	 * the time budget. Together with setSeed() and a single thread, this makes the engine's searches
+	 * repeatable.
+	 */
+	public void setIterationBudget(long iterationBudget) {
+		_iterationBudget = iterationBudget;
+	}
+
+	/**
+	 * This method sets the number of playable squares (see SimulationBoard.getNumPlayableSquares())
+	 * at or below which the engine tries to solve a position exactly before searching it. 0 turns the
+	 * endgame solver off.
+	 */
+	public void setSolverThreshold(int solverThreshold) {
+		_solverThreshold = solverThreshold;
+	}
+
+	/**
+	 * This method seeds all the engine's random number generators, so that with a single thread and
+	 * an iteration budget it searches the same way every time.
+	 */
+	public void setSeed(long seed) {
+		_isSeeded = true;
+		_seed = seed;
+		_random = new Random(seed);
+		_searches = null;
+	}
+
+	/**
+	 * This method sets how many threads the engine searches on. Each thread grows its own game
+	 * tree, so more threads means more playouts in the same time.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads != _numThreads && _executor != null) {
+			_executor.shutdown();
+			_executor = null;
+		}
+		_numThreads = numThreads;
+		_searches = null;
+	}
+
+	/**
+	 * This method sets how the threads search (see the SearchMode enum).
+	 */
+	public void setSearchMode(SearchMode searchMode) {
+		_searchMode = searchMode;
+		_searches = null;
+	}
+
+	/**
+	 * This method sets how many rollouts are played from each leaf in LEAF_PARALLEL mode.
+	 */
+	public void setBatchSize(int batchSize) {
+		_batchSize = batchSize;
+		_searches = null;
+	}
+
+	/**
+	 * This method sets whether the game trees share statistics between transpositions (different
+	 * orders of moves reaching the same position).
+	 */
+	public void setUseTranspositions(boolean useTranspositions) {
+		_useTranspositions = useTranspositions;
+		_searches = null;
+	}
+}
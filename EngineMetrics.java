@@ -0,0 +1,331 @@
+package TicTacToe;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps running metrics for every Engine in the program, so that a long-running game
+ * (e.g. computer against computer, or an engine on a server) can be watched without attaching a
+ * profiler: how long the moves take (as a histogram, so the slow ones show up), how many playouts
+ * are run per second, how big the game trees are, how much of each tree is kept from the previous
+ * move, and how fast the search threads allocate memory.
+ *
+ * There is one instance, which is registered with the platform MBean server as
+ * TicTacToe:type=EngineMetrics the first time it is used, so it can be read with JConsole or any
+ * JMX scraper. Its Snapshot attribute has all the metrics as text, one "name value" line each.
+ *
+ * The engines update the metrics from their own threads without taking any locks, so a reading
+ * taken during a search may be a move out of date.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+	private static EngineMetrics _instance;
+
+	private LatencyHistogram _moveTimes;
+	private LongAdder _numPlayouts;
+	private LongAdder _searchTime;
+	private LongAdder _numNodesReused;
+	private LongAdder _numNodes;
+	private AtomicLong _treeSize;
+	private LongAdder _allocatedBytes;
+	private LongAdder _searchThreadTime;
+
+	/**
+	 * This static method returns the metrics, making them and registering them with JMX the first
+	 * time it is called. If they cannot be registered (e.g. another copy of the classes has already
+	 * registered the name, or the MBean server does not allow it), this is reported once and the
+	 * metrics are still kept, just not visible over JMX, since the engine must work without them.
+	 */
+	public static synchronized EngineMetrics getInstance() {
+		if (_instance == null) {
+			_instance = new EngineMetrics();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(_instance,
+						new ObjectName("TicTacToe:type=EngineMetrics"));
+			} catch (JMException | SecurityException e) {
+				System.err.println("The engine metrics could not be registered with JMX: " + e);
+			}
+		}
+		return _instance;
+	}
+
+	/**
+	 * This constructor makes empty metrics. It is private, since there is only one instance.
+	 */
+	private EngineMetrics() {
+		_moveTimes = new LatencyHistogram();
+		_numPlayouts = new LongAdder();
+		_searchTime = new LongAdder();
+		_numNodesReused = new LongAdder();
+		_numNodes = new LongAdder();
+		_treeSize = new AtomicLong();
+		_allocatedBytes = new LongAdder();
+		_searchThreadTime = new LongAdder();
+	}
+
+	/**
+	 * This method records a search for a move, given its result and the number of nodes in the game
+	 * trees before it started (i.e. kept from earlier searches).
+	 */
+	public void recordSearch(SearchResult result, long numNodesReused) {
+		_moveTimes.record(result.getSearchTime());
+		_numPlayouts.add(result.getNumNewPlayouts());
+		_searchTime.add(result.getSearchTime());
+		_numNodesReused.add(numNodesReused);
+		_numNodes.add(result.getNumNodes());
+		_treeSize.set(result.getNumNodes());
+	}
+
+	/**
+	 * This method records the bytes allocated by one search thread while it spent the given number
+	 * of nanoseconds searching or pondering.
+	 */
+	public void recordAllocation(long bytes, long time) {
+		_allocatedBytes.add(bytes);
+		_searchThreadTime.add(time);
+	}
+
+	/**
+	 * This static method returns the number of bytes the current thread has allocated so far, or 0
+	 * if the JVM cannot tell.
+	 */
+	public static long getAllocatedBytes() {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemoryEnabled()) {
+			return 0;
+		}
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * This method returns the number of moves searched for.
+	 */
+	@Override
+	public long getNumMoves() {
+		return _moveTimes.getCount();
+	}
+
+	/**
+	 * This method returns the mean time taken to choose a move, in milliseconds.
+	 */
+	@Override
+	public double getMoveTimeMean() {
+		long numMoves = this.getNumMoves();
+		return numMoves == 0 ? 0 : _searchTime.sum() / 1e6 / numMoves;
+	}
+
+	/**
+	 * This method returns the median time taken to choose a move, in milliseconds.
+	 */
+	@Override
+	public double getMoveTimeP50() {
+		return _moveTimes.getPercentile(50) / 1e6;
+	}
+
+	/**
+	 * This method returns the time which 99% of the moves took at most, in milliseconds.
+	 */
+	@Override
+	public double getMoveTimeP99() {
+		return _moveTimes.getPercentile(99) / 1e6;
+	}
+
+	/**
+	 * This method returns the time which 99.9% of the moves took at most, in milliseconds.
+	 */
+	@Override
+	public double getMoveTimeP999() {
+		return _moveTimes.getPercentile(99.9) / 1e6;
+	}
+
+	/**
+	 * This method returns the longest time taken to choose a move, in milliseconds.
+	 */
+	@Override
+	public double getMoveTimeMax() {
+		return _moveTimes.getMax() / 1e6;
+	}
+
+	/**
+	 * This method returns the playouts run per second of searching for a move.
+	 */
+	@Override
+	public double getPlayoutsPerSecond() {
+		long searchTime = _searchTime.sum();
+		return searchTime == 0 ? 0 : _numPlayouts.sum() / (searchTime / 1e9);
+	}
+
+	/**
+	 * This method returns the number of nodes in the game trees at the end of the latest search.
+	 */
+	@Override
+	public long getTreeSize() {
+		return _treeSize.get();
+	}
+
+	/**
+	 * This method returns the share of the nodes in the game trees at the end of the searches which
+	 * were kept from earlier searches.
+	 */
+	@Override
+	public double getReuseRatio() {
+		long numNodes = _numNodes.sum();
+		return numNodes == 0 ? 0 : (double) _numNodesReused.sum() / numNodes;
+	}
+
+	/**
+	 * This method returns the bytes allocated per second by each search thread while searching or
+	 * pondering.
+	 */
+	@Override
+	public double getAllocationRate() {
+		long searchThreadTime = _searchThreadTime.sum();
+		return searchThreadTime == 0 ? 0 : _allocatedBytes.sum() / (searchThreadTime / 1e9);
+	}
+
+	/**
+	 * This method returns all the metrics as text, one "name value" line each.
+	 */
+	@Override
+	public String getSnapshot() {
+		StringBuilder snapshot = new StringBuilder();
+		snapshot.append(String.format("tictactoe_moves %d%n", this.getNumMoves()));
+		snapshot.append(String.format("tictactoe_move_time_ms_mean %.3f%n", this.getMoveTimeMean()));
+		snapshot.append(String.format("tictactoe_move_time_ms_p50 %.3f%n", this.getMoveTimeP50()));
+		snapshot.append(String.format("tictactoe_move_time_ms_p99 %.3f%n", this.getMoveTimeP99()));
+		snapshot.append(String.format("tictactoe_move_time_ms_p999 %.3f%n", this.getMoveTimeP999()));
+		snapshot.append(String.format("tictactoe_move_time_ms_max %.3f%n", this.getMoveTimeMax()));
+		snapshot.append(String.format("tictactoe_playouts_per_second %.0f%n", this.getPlayoutsPerSecond()));
+		snapshot.append(String.format("tictactoe_tree_size %d%n", this.getTreeSize()));
+		snapshot.append(String.format("tictactoe_reuse_ratio %.4f%n", this.getReuseRatio()));
+		snapshot.append(String.format("tictactoe_allocation_bytes_per_second %.0f%n", this.getAllocationRate()));
+		return snapshot.toString();
+	}
+
+	/**
+	 * This method empties the metrics, e.g. between two matches.
+	 */
+	@Override
+	public void reset() {
+		_moveTimes.reset();
+		_numPlayouts.reset();
+		_searchTime.reset();
+		_numNodesReused.reset();
+		_numNodes.reset();
+		_treeSize.set(0);
+		_allocatedBytes.reset();
+		_searchThreadTime.reset();
+	}
+
+	/**
+	 * This inner class is a histogram of times in nanoseconds, in the style of an HDR histogram:
+	 * the buckets double in width with each power of two, and each power of two is split into
+	 * SUB_BUCKETS buckets, so any time is known to within about 3% whatever its size. Recording a time
+	 * is one atomic increment, so several threads can record at once.
+	 */
+	private static class LatencyHistogram {
+		private static final int SUB_BUCKET_BITS = 5;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private AtomicLongArray _counts;
+		private LongAdder _count;
+		private AtomicLong _max;
+
+		/**
+		 * This constructor makes an empty histogram with enough buckets for any positive long.
+		 */
+		public LatencyHistogram() {
+			_counts = new AtomicLongArray(LatencyHistogram.getBucket(Long.MAX_VALUE) + 1);
+			_count = new LongAdder();
+			_max = new AtomicLong();
+		}
+
+		/**
+		 * This method adds a time to the histogram.
+		 */
+		public void record(long time) {
+			time = Math.max(0, time);
+			_counts.incrementAndGet(LatencyHistogram.getBucket(time));
+			_count.increment();
+			_max.accumulateAndGet(time, Math::max);
+		}
+
+		/**
+		 * This method returns the number of times recorded.
+		 */
+		public long getCount() {
+			return _count.sum();
+		}
+
+		/**
+		 * This method returns the longest time recorded.
+		 */
+		public long getMax() {
+			return _max.get();
+		}
+
+		/**
+		 * This method returns the time which the given percentage of the recorded times are at most,
+		 * rounded up to the top of its bucket (but no more than the longest time), or 0 if nothing has
+		 * been recorded.
+		 */
+		public long getPercentile(double percentile) {
+			long count = 0;
+			for (int bucket = 0; bucket < _counts.length(); bucket++) {
+				count += _counts.get(bucket);
+			}
+			// The number of times which must be at or below the percentile, at least one.
+			long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+			long seen = 0;
+			for (int bucket = 0; bucket < _counts.length(); bucket++) {
+				seen += _counts.get(bucket);
+				if (seen >= rank) {
+					return Math.min(LatencyHistogram.getBucketTop(bucket), this.getMax());
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * This method empties the histogram.
+		 */
+		public void reset() {
+			for (int bucket = 0; bucket < _counts.length(); bucket++) {
+				_counts.set(bucket, 0);
+			}
+			_count.reset();
+			_max.set(0);
+		}
+
+		/**
+		 * This static method returns the bucket a time falls into. The times below SUB_BUCKETS each
+		 * have their own bucket; above that, a time is shifted right until it is below
+		 * 2 * SUB_BUCKETS, and the shift picks the group of buckets it falls into.
+		 */
+		private static int getBucket(long time) {
+			int highestBit = 63 - Long.numberOfLeadingZeros(time);
+			if (highestBit < SUB_BUCKET_BITS) {
+				return (int) time;
+			}
+			int shift = highestBit - SUB_BUCKET_BITS;
+			return shift * SUB_BUCKETS + (int) (time >> shift);
+		}
+
+		/**
+		 * This static method returns the longest time which falls into the given bucket.
+		 */
+		private static long getBucketTop(int bucket) {
+			if (bucket < 2 * SUB_BUCKETS) {
+				return bucket;
+			}
+			int shift = bucket / SUB_BUCKETS - 1;
+			long bottom = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+			return bottom + (1L << shift) - 1;
+		}
+	}
+}
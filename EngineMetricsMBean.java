@@ -0,0 +1,32 @@
+package TicTacToe;
+
+/**
+ * This interface is what JMX shows of the EngineMetrics, as the TicTacToe:type=EngineMetrics MBean.
+ * Each method becomes a read-only attribute, apart from reset(), which becomes an operation. The
+ * times are in milliseconds.
+ */
+public interface EngineMetricsMBean {
+	public long getNumMoves();
+
+	public double getMoveTimeMean();
+
+	public double getMoveTimeP50();
+
+	public double getMoveTimeP99();
+
+	public double getMoveTimeP999();
+
+	public double getMoveTimeMax();
+
+	public double getPlayoutsPerSecond();
+
+	public long getTreeSize();
+
+	public double getReuseRatio();
+
+	public double getAllocationRate();
+
+	public String getSnapshot();
+
+	public void reset();
+}
@@ -0,0 +1,16 @@
+package TicTacToe;
+
+/**
+ * This enum encodes which game type the user chose.
+ */
+public enum GameSetting {
+	BASIC, ULTIMATE;
+
+	/**
+	 * This method returns the length of a side of the board in squares: 3 for the Basic game and 9
+	 * for the Ultimate one.
+	 */
+	public int getBoardSize() {
+		return this == ULTIMATE ? 9 : 3;
+	}
+}
@@ -0,0 +1,8 @@
+package TicTacToe;
+
+/**
+ * This enum describes possible game states. NOWIN means the game is still ongoing.
+ */
+public enum GameState {
+	WIN, LOSE, NOWIN, DRAW
+}
@@ -1,8 +1,6 @@
 package TicTacToe;
 
 import java.util.ArrayList;
-import TicTacToe.Square.Piece;
-import TicTacToe.TicTacToe.GameSetting;
 import javafx.scene.layout.StackPane;
 
 /**
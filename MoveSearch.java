@@ -0,0 +1,477 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class contains one Monte Carlo Tree Search for the Engine: a game tree, the dummy
+ * board that the tree is explored on and a random number generator for the playouts. The
+ * Engine runs several of these at once on different threads. Either each search grows its
+ * own tree from the same position and their statistics are combined afterwards, or all the
+ * searches grow one shared tree. In the second case, virtual losses are added to the nodes a
+ * search passes through so that the other searches are steered towards different branches.
+ *
+ * As with the ComputerPlayer, refer to this page in case of confusion about the algorithm:
+ *
+ * https://en.wikipedia.org/wiki/Monte_Carlo_tree_search
+ */
+public class MoveSearch {
+	private GameSetting _gameSetting;
+	private MoveTree _moveTree;
+	private SimulationBoard _dummyBoard;
+	private Random _random;
+	private boolean _useVirtualLoss;
+	private RolloutTask[] _rolloutTasks;
+	private ExecutorService _rolloutExecutor;
+	private int _batchSize;
+	private int[] _path;
+	private int _pathLength;
+	private int _numRootMoves;
+	private long _numIterations;
+	private long _numNodesCreated;
+	private long _totalDepth;
+	private int _maxDepth;
+	private boolean _isTimingPhases;
+	private long _selectTime;
+	private long _expandTime;
+	private long _rolloutTime;
+	private long _backupTime;
+
+	/**
+	 * This constructor sets up a search which grows the given tree. Each search has its own random
+	 * number generator so that searches running together explore differently. If the tree is shared
+	 * with other searches running at the same time, useVirtualLoss should be true.
+	 */
+	public MoveSearch(MoveTree moveTree, GameSetting gameSetting, Random random, boolean useVirtualLoss) {
+		_moveTree = moveTree;
+		_gameSetting = gameSetting;
+		_random = random;
+		_useVirtualLoss = useVirtualLoss;
+		// The path holds the root and at most one node per square on the board.
+		_path = new int[gameSetting.getBoardSize() * gameSetting.getBoardSize() + 1];
+	}
+
+	/**
+	 * This method makes the search play a batch of rollouts from each new leaf instead of one,
+	 * spread over the given number of threads (this one and numThreads - 1 from the executor). This
+	 * suits positions where the tree is small and the playouts take most of the time. Each thread's
+	 * rollouts get their own random number generator, seeded from the search's, so a seeded search
+	 * plays the same rollouts however the threads are scheduled.
+	 */
+	public void useLeafParallelRollouts(ExecutorService executor, int numThreads, int batchSize) {
+		_rolloutExecutor = executor;
+		_batchSize = batchSize;
+		_rolloutTasks = new RolloutTask[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			_rolloutTasks[i] = new RolloutTask(_gameSetting, new Random(_random.nextLong()));
+		}
+	}
+
+	/**
+	 * This method gets the search ready to improve its tree from the real game's position. It takes
+	 * a single copy of the position, which every iteration makes and then undoes moves on. The
+	 * tree's root must already correspond to this position (see MoveTree.setRootToMove()).
+	 */
+	public void setPosition(SimulationBoard position) {
+		_dummyBoard = new SimulationBoard(_gameSetting);
+		_dummyBoard.copyBoard(position);
+		// The position may itself have been reached with makeMove(), and those moves must stay made.
+		_numRootMoves = _dummyBoard.getNumMovesMade();
+		_numIterations = 0;
+		_numNodesCreated = 0;
+		_totalDepth = 0;
+		_maxDepth = 0;
+		_selectTime = 0;
+		_expandTime = 0;
+		_rolloutTime = 0;
+		_backupTime = 0;
+	}
+
+	/**
+	 * This method sets whether the search times each phase of its iterations (see getSelectTime()
+	 * and the others). Reading the clock several times per iteration slows the search down a little,
+	 * so it is only done when someone is recording the times (see SearchEvent).
+	 */
+	public void setTimingPhases(boolean isTimingPhases) {
+		_isTimingPhases = isTimingPhases;
+	}
+
+	/**
+	 * This method runs improveGameTree() repeatedly until the given time (in nanoseconds since
+	 * startTime) runs out, until it has run iterationBudget times since setPosition(), until stopped
+	 * is set by another thread, or until the tree is full (see MoveTree.isFull()).
+	 */
+	public void search(long startTime, long timeBudget, long iterationBudget, AtomicBoolean stopped) {
+		boolean timeRanOut = false;
+		while (!timeRanOut && _numIterations < iterationBudget && !stopped.get() && !_moveTree.isFull()
+				&& !_moveTree.isProven(_moveTree.getRoot())) {
+			this.improveGameTree();
+			_numIterations++;
+			if (System.nanoTime() - startTime >= timeBudget) {
+				timeRanOut = true;
+			}
+		}
+	}
+
+	/**
+	 * This method contains the methods which make up the algorithm. The dummy board starts each
+	 * iteration at the root position and is rewound back to it at the end. The nodes passed through
+	 * on the way down are kept in the path, so they can be updated on the way back up.
+	 */
+	public void improveGameTree() {
+		int node = _moveTree.getRoot();
+		_path[0] = node;
+		_pathLength = 1;
+
+		// These methods are explained in their respective comments.
+		long startTime = _isTimingPhases ? System.nanoTime() : 0;
+		node = this.traverseTree(node);
+		long selectEndTime = _isTimingPhases ? System.nanoTime() : 0;
+		int leaf = this.expand(node);
+		// A new node whose position has already been played out through a transposition does not
+		// need a playout of its own, so the search carries on below it instead.
+		while (leaf != node && _moveTree.isTransposition(leaf)) {
+			node = leaf;
+			leaf = this.expand(node);
+		}
+		if (_moveTree.isProven(leaf)) {
+			this.propagateProof();
+		}
+		long expandEndTime = _isTimingPhases ? System.nanoTime() : 0;
+		this.playout(leaf);
+		// Undoes every move made in the tree and the playout.
+		while (_dummyBoard.getNumMovesMade() > _numRootMoves) {
+			_dummyBoard.undoMove();
+		}
+
+		// The depth of a node is the number of moves from the root to it.
+		_totalDepth += _pathLength - 1;
+		_maxDepth = Math.max(_maxDepth, _pathLength - 1);
+		if (_isTimingPhases) {
+			_selectTime += selectEndTime - startTime;
+			_expandTime += expandEndTime - selectEndTime;
+			// This includes the backup, which is taken back out by getRolloutTime().
+			_rolloutTime += System.nanoTime() - expandEndTime;
+		}
+	}
+
+	/**
+	 * This method travels down the tree until it finds a viable node to expand and play out: one
+	 * whose children have not been created or have not all been played out yet. It places the moves
+	 * on the way on the dummy board and returns the tree node.
+	 */
+	private int traverseTree(int node) {
+		// There is nothing more to learn below a node whose result is proven.
+		while (_moveTree.getNumChildren(node) != 0 && !_moveTree.isProven(node)
+				&& this.findUnvisitedChild(node) == -1) {
+			// Chooses the best child via the UCB1 algorithm.
+			node = this.selectUCB(node);
+			this.visit(node);
+		}
+		return node;
+	}
+
+	/**
+	 * This method expands the tree by one node and then returns that node. The first time a node is
+	 * reached all its children are created at once, and each time after that the next child which
+	 * has not been played out yet is chosen. A node whose result is proven is not expanded.
+	 */
+	private int expand(int node) {
+		if (_moveTree.isProven(node) || this.markGameOver(node)) {
+			return node;
+		}
+		// If another thread is creating the children, or the tree is full, this node is played out
+		// itself instead.
+		if (_moveTree.getNumChildren(node) == 0) {
+			if (!_moveTree.expand(node, _dummyBoard)) {
+				return node;
+			}
+			_numNodesCreated += _moveTree.getNumChildren(node);
+		}
+		int child = this.findUnvisitedChild(node);
+		// Another thread sharing the tree may have just played out the last unvisited child.
+		if (child == -1) {
+			child = this.selectUCB(node);
+		}
+		node = child;
+		this.visit(node);
+		if (this.markGameOver(node) || _gameSetting != GameSetting.ULTIMATE) {
+			return node;
+		}
+		// Notes the moves which the Ultimate heuristics weight (see MoveTree.getUCBStat()).
+		int move = _moveTree.getMove(node);
+		if (_dummyBoard.isSmallBoardWon(SimulationBoard.decodeX(move), SimulationBoard.decodeY(move))) {
+			_moveTree.setAsSmallBoardWin(node, _path[_pathLength - 2]);
+		} else if (_dummyBoard.isBoardFinished(move % 9)) {
+			_moveTree.setAsSendingToFinishedBoard(node);
+		}
+		return node;
+	}
+
+	/**
+	 * This method marks a node whose move ends the game (which must be the position on the dummy
+	 * board) as a proven win or draw for the player who made it, and returns whether it did.
+	 */
+	private boolean markGameOver(int node) {
+		if (_dummyBoard.getGameState() == GameState.NOWIN) {
+			return false;
+		}
+		_moveTree.setProvenResult(node, _dummyBoard.getGameState());
+		return true;
+	}
+
+	/**
+	 * This method passes the proof of the last node on the path up the path, for as long as each
+	 * node's result follows from its children's (see MoveTree.updateProof()).
+	 */
+	private void propagateProof() {
+		for (int i = _pathLength - 2; i >= 0; i--) {
+			if (!_moveTree.updateProof(_path[i])) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This method moves down the tree to a child: it adds the child to the path, gives it a virtual
+	 * loss if the tree is shared and places its move on the dummy board.
+	 */
+	private void visit(int node) {
+		_path[_pathLength] = node;
+		_pathLength++;
+		if (_useVirtualLoss) {
+			_moveTree.addVirtualLoss(node);
+		}
+		_dummyBoard.makeMove(_moveTree.getMove(node), _moveTree.getPiece(node));
+	}
+
+	/**
+	 * This method returns the first child of a node which has not been played out yet, or -1 if
+	 * there is none.
+	 */
+	private int findUnvisitedChild(int node) {
+		int firstChild = _moveTree.getFirstChild(node);
+		for (int i = 0; i < _moveTree.getNumChildren(node); i++) {
+			if (_moveTree.getNumPlayouts(firstChild + i) == 0) {
+				return firstChild + i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * This method performs a random playout until game over. It then calls backup() to propagate
+	 * statistics to the game tree. Nothing is allocated per move: moves are plain ints and the
+	 * game state is an enum constant.
+	 *
+	 * If leaf parallel rollouts are in use, a whole batch of playouts is instead shared out between
+	 * the rollout tasks (one of which runs on this thread), and their combined result is backed up
+	 * in one go.
+	 */
+	private void playout(int node) {
+		// A node whose result is proven (e.g. a finished game) always ends the same way, so its result
+		// is backed up as it is.
+		GameState provenResult = _moveTree.getProvenResult(node);
+		if (provenResult != GameState.NOWIN) {
+			this.backup(provenResult == GameState.WIN ? 1 : provenResult == GameState.LOSE ? -1 : 0, 1);
+			return;
+		}
+		if (_rolloutTasks == null) {
+			this.backup(MoveSearch.playRandomGame(_dummyBoard, _moveTree.getPiece(node), _random), 1);
+			return;
+		}
+
+		for (int i = 0; i < _rolloutTasks.length; i++) {
+			int numRollouts = _batchSize / _rolloutTasks.length + (i < _batchSize % _rolloutTasks.length ? 1 : 0);
+			_rolloutTasks[i].setUp(_dummyBoard, _moveTree.getPiece(node), numRollouts);
+		}
+		ArrayList<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 1; i < _rolloutTasks.length; i++) {
+			futures.add(_rolloutExecutor.submit(_rolloutTasks[i]));
+		}
+		int winsChange = _rolloutTasks[0].call();
+		try {
+			for (Future<Integer> future : futures) {
+				winsChange += future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("A rollout failed", e);
+		}
+		this.backup(winsChange, _batchSize);
+	}
+
+	/**
+	 * This static method plays random moves on a board until the game is over, starting with the
+	 * opposite of the given piece. It returns 1 if the given piece won, -1 if it lost and 0 for a
+	 * draw. The moves are left on the board.
+	 */
+	static int playRandomGame(SimulationBoard board, Piece piece, Random random) {
+		Piece currentPiece = piece.flip();
+		// Plays moves while the game is not won.
+		while (board.getGameState() == GameState.NOWIN) {
+			// Chooses and plays a random legal move.
+			board.makeMove(board.getRandomLegalMove(random), currentPiece);
+			currentPiece = currentPiece.flip();
+		}
+		if (board.getGameState() == GameState.DRAW) {
+			return 0;
+		}
+		// The piece to move next is the one that did not make the winning move.
+		return currentPiece == piece ? -1 : 1;
+	}
+
+	/**
+	 * This method backs up the tree and propagates the game results into the statistics of the
+	 * nodes on the path. winsChange is the number of the playouts won minus the number lost, from
+	 * the point of view of the node the playouts started from (the last node on the path).
+	 */
+	private void backup(int winsChange, int numPlayouts) {
+		long startTime = _isTimingPhases ? System.nanoTime() : 0;
+		for (int i = _pathLength - 1; i >= 0; i--) {
+			// Every node on the path except the root was given a virtual loss on the way down.
+			if (_useVirtualLoss && i > 0) {
+				_moveTree.updateStatsAfterVirtualLoss(_path[i], winsChange, numPlayouts);
+			} else {
+				_moveTree.updateStats(_path[i], winsChange, numPlayouts);
+			}
+			// Wins and losses alternate up the tree, since the players alternate.
+			winsChange = -winsChange;
+		}
+		if (_isTimingPhases) {
+			_backupTime += System.nanoTime() - startTime;
+		}
+	}
+
+	/**
+	 * This method selects the best child of a tree node based on the UCB1 algorithm. Like
+	 * playRandomGame(), it is package-private so that Benchmarks can time it.
+	 */
+	int selectUCB(int node) {
+		int firstChild = _moveTree.getFirstChild(node);
+		int parentPlayouts = _moveTree.getNumPlayouts(node);
+		int bestScored = firstChild;
+		double bestScore = _moveTree.getUCBStat(firstChild, parentPlayouts);
+		for (int i = 1; i < _moveTree.getNumChildren(node); i++) {
+			double score = _moveTree.getUCBStat(firstChild + i, parentPlayouts);
+			if (score > bestScore) {
+				bestScored = firstChild + i;
+				bestScore = score;
+			}
+		}
+		return bestScored;
+	}
+
+	/**
+	 * This method returns how many times search() has run improveGameTree() since setPosition().
+	 */
+	public long getNumIterations() {
+		return _numIterations;
+	}
+
+	/**
+	 * This method returns how many nodes the search has added to the tree since setPosition().
+	 */
+	public long getNumNodesCreated() {
+		return _numNodesCreated;
+	}
+
+	/**
+	 * This method returns the total depth reached by the search's iterations since setPosition(),
+	 * i.e. the sum of the numbers of moves from the root to the node played out.
+	 */
+	public long getTotalDepth() {
+		return _totalDepth;
+	}
+
+	/**
+	 * This method returns the deepest any of the search's iterations has reached since setPosition().
+	 */
+	public int getMaxDepth() {
+		return _maxDepth;
+	}
+
+	/**
+	 * This method returns how many nanoseconds the search has spent choosing nodes on the way down
+	 * the tree since setPosition(), if it is timing its phases.
+	 */
+	public long getSelectTime() {
+		return _selectTime;
+	}
+
+	/**
+	 * This method returns how many nanoseconds the search has spent expanding nodes since
+	 * setPosition(), if it is timing its phases.
+	 */
+	public long getExpandTime() {
+		return _expandTime;
+	}
+
+	/**
+	 * This method returns how many nanoseconds the search has spent on playouts since setPosition(),
+	 * if it is timing its phases.
+	 */
+	public long getRolloutTime() {
+		return _rolloutTime - _backupTime;
+	}
+
+	/**
+	 * This method returns how many nanoseconds the search has spent updating the statistics on the
+	 * way back up the tree since setPosition(), if it is timing its phases.
+	 */
+	public long getBackupTime() {
+		return _backupTime;
+	}
+
+	/**
+	 * This method gets the search's game tree.
+	 */
+	public MoveTree getMoveTree() {
+		return _moveTree;
+	}
+
+	/**
+	 * This inner class plays a share of a batch of leaf parallel rollouts. Each task has its own
+	 * board and random number generator, so tasks can run on different threads at the same time.
+	 */
+	private static class RolloutTask implements Callable<Integer> {
+		private SimulationBoard _board;
+		private Random _random;
+		private Piece _piece;
+		private int _numRollouts;
+
+		public RolloutTask(GameSetting gameSetting, Random random) {
+			_board = new SimulationBoard(gameSetting);
+			_random = random;
+		}
+
+		/**
+		 * This method copies the leaf position and says how many rollouts to play from it.
+		 */
+		public void setUp(SimulationBoard leafBoard, Piece piece, int numRollouts) {
+			_board.copyBoard(leafBoard);
+			_piece = piece;
+			_numRollouts = numRollouts;
+		}
+
+		/**
+		 * This method plays the rollouts, rewinding the board to the leaf after each one, and returns
+		 * the number won minus the number lost.
+		 */
+		public Integer call() {
+			int winsChange = 0;
+			int leafMoves = _board.getNumMovesMade();
+			for (int i = 0; i < _numRollouts; i++) {
+				winsChange += MoveSearch.playRandomGame(_board, _piece, _random);
+				while (_board.getNumMovesMade() > leafMoves) {
+					_board.undoMove();
+				}
+			}
+			return winsChange;
+		}
+	}
+}
@@ -1,31 +1,771 @@
 package TicTacToe;
 
-import TicTacToe.Square.Piece;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class is for the game tree, which is used by the computer to determine good moves to play.
+ *
+ * Rather than making an object for every node, the tree keeps its nodes in a pool of primitive
+ * arrays and refers to each node by its index. For every node it stores the move (encoded as in
+ * SimulationBoard), the statistics, some flags, and where its children are. A node's children are
+ * all created at once when it is expanded, so they sit next to each other in the pool and can be
+ * described by the index of the first child and how many there are. This takes a fraction of the
+ * memory of separate node objects and keeps siblings together for selectUCB(). The statistics are
+ * packed into a single long per node (wins in the top 32 bits, playouts in the bottom 32 bits) so
+ * that several threads can update them at once without locking.
+ *
+ * The pool is split into pages which are only created when they are needed, so the tree can grow
+ * while other threads are reading it. When the root moves down the tree, only the new root's
+ * subtree is still useful, so it is copied into fresh pages and the old pages are left for the
+ * garbage collector. This keeps the memory used by the tree from growing move after move.
+ *
+ * The tree can also be given a budget of nodes. Once it is nearly used up, the tree reports itself
+ * as full; the searches then stop, pruneColdSubtrees() throws away the branches below the least
+ * played nodes, and the searches carry on in the room that frees up.
+ *
+ * The tree can also be given a TranspositionTable. Every node remembers the hash of its position,
+ * its results are added to the table as well as to the node, and a node whose position has been
+ * played out through another order of moves is judged on the table's statistics when they are
+ * better informed than its own.
+ *
+ * Some nodes' results are known for certain, and are marked as proven (the MCTS-Solver): a move
+ * which ends the game is a proven win or draw for the player who made it, a move is a proven loss if
+ * the opponent has a proven winning reply, and a proven win (or draw) if every reply has been proven
+ * to lose (or at best draw) for the opponent. The search never needs to play out below a proven node
+ * again, and the engine can tell a sure win from a merely likely one.
  */
 public class MoveTree {
-	private MoveTreeNode _root;
-	
+	// The value of getFirstChild() for a node whose children have not been created yet.
+	public static final int NOT_EXPANDED = -1;
+	// The value of getFirstChild() while another thread is creating the node's children.
+	private static final int EXPANDING = -2;
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int MAX_PAGES = 4096;
+	// The largest number of nodes the pool can ever hold.
+	public static final int MAX_NODES = MAX_PAGES * PAGE_SIZE;
+	// The smallest node budget allowed, which leaves room for the root's children after pruning.
+	public static final int MIN_NODE_BUDGET = 1024;
+	// Roughly how many bytes of heap each node takes up (see the arrays below).
+	public static final int BYTES_PER_NODE = 26;
+	// The most nodes a single expansion can add, so a tree with less room than this is full.
+	private static final int MAX_CHILDREN = 81;
+	private static final int FLAG_PIECE_X = 1;
+	// The node's move wins a small board (see getUCBStat()).
+	private static final int FLAG_WINS_SMALL_BOARD = 2;
+	// A reply to the node's move wins a small board.
+	private static final int FLAG_GIVES_SMALL_BOARD = 4;
+	// Set once the transposition table knows more about a node's position than the node does.
+	private static final int FLAG_TRANSPOSED = 8;
+	// The node's move sends the opponent to a finished board, so they can move anywhere.
+	private static final int FLAG_SENDS_TO_FINISHED_BOARD = 16;
+	// The node's result is proven, for the player who made its move.
+	private static final int FLAG_PROVEN_WIN = 32;
+	private static final int FLAG_PROVEN_LOSS = 64;
+	private static final int FLAG_PROVEN_DRAW = 128;
+	private static final int FLAGS_PROVEN = FLAG_PROVEN_WIN | FLAG_PROVEN_LOSS | FLAG_PROVEN_DRAW;
+	// The positions below the node were in the tree before and were thrown away (pruned, or with the
+	// whole tree), so the table's statistics for them may be their own old ones rather than another
+	// node's. Children of such a node have it too.
+	private static final int FLAG_REGROWN = 256;
+	// How much the Ultimate heuristics (see getUCBStat()) count for a node with no playouts. Their
+	// weight falls as the node is played out and its own statistics become reliable.
+	private static final double HEURISTIC_WEIGHT = 1;
+
+	private byte[][] _moves;
+	private long[][] _hashes;
+	private byte[][] _numChildren;
+	private AtomicIntegerArray[] _firstChildren;
+	private AtomicIntegerArray[] _flags;
+	private AtomicLongArray[] _stats;
+	private AtomicInteger _numNodes;
+	private volatile int _numPages;
+	private int _root;
+	private TranspositionTable _transpositionTable;
+	private int _numNodesRetained;
+	private int _numNodesFreed;
+	private int _nodeBudget;
+	// An empty pool that reclaimNodes() copies the root's subtree into, and which then takes the old
+	// page references, so the page tables are not made again for every move.
+	private MoveTree _spareTree;
+
 	/**
-	 * When the tree is instantiated, this constructor makes a new empty node to be the root.
+	 * When the tree is instantiated, this constructor makes a new empty node to be the root. The
+	 * piece is the piece that played the move leading to the root's position.
 	 */
 	public MoveTree(Piece piece) {
-		this.setRoot(new MoveTreeNode(null, null, piece));
+		this();
+		this.setRoot(this.addRoot(piece, 0));
+	}
+
+	/**
+	 * This constructor makes an empty pool with no root. It is used for the spare pool of
+	 * reclaimNodes().
+	 */
+	private MoveTree() {
+		_moves = new byte[MAX_PAGES][];
+		_hashes = new long[MAX_PAGES][];
+		_numChildren = new byte[MAX_PAGES][];
+		_firstChildren = new AtomicIntegerArray[MAX_PAGES];
+		_flags = new AtomicIntegerArray[MAX_PAGES];
+		_stats = new AtomicLongArray[MAX_PAGES];
+		_numNodes = new AtomicInteger(0);
+		_numPages = 0;
+		_nodeBudget = MAX_NODES;
+	}
+
+	/**
+	 * This method adds a node with no move and no parent to the pool and returns its index. The hash
+	 * is that of the node's position, or 0 if it is not known.
+	 */
+	private int addRoot(Piece piece, long hash) {
+		int node = this.allocate(1);
+		if (node == -1) {
+			throw new IllegalStateException("The game tree is full");
+		}
+		this.initialiseNode(node, -1, hash, piece);
+		return node;
+	}
+
+	/**
+	 * This method reserves space for some new nodes in the pool, creating pages as necessary. It
+	 * returns the index of the first new node, or -1 if the pool is full.
+	 */
+	private int allocate(int numNodes) {
+		// Checking first stops the count from growing without limit once the pool is full.
+		if (_numNodes.get() + numNodes > _nodeBudget) {
+			return -1;
+		}
+		int first = _numNodes.getAndAdd(numNodes);
+		if (first + numNodes > _nodeBudget) {
+			return -1;
+		}
+		int lastPage = (first + numNodes - 1) >>> PAGE_BITS;
+		if (lastPage >= _numPages) {
+			this.addPages(lastPage);
+		}
+		return first;
+	}
+
+	/**
+	 * This method creates pages of the pool up to and including the given page. It is synchronized
+	 * so that two threads crossing into a new page at the same time do not both create it, but it is
+	 * only called once per page. Since _numPages is volatile, a thread that sees the new count also
+	 * sees the new pages.
+	 */
+	private synchronized void addPages(int lastPage) {
+		for (int page = _numPages; page <= lastPage; page++) {
+			_moves[page] = new byte[PAGE_SIZE];
+			_hashes[page] = new long[PAGE_SIZE];
+			_numChildren[page] = new byte[PAGE_SIZE];
+			_firstChildren[page] = new AtomicIntegerArray(PAGE_SIZE);
+			_flags[page] = new AtomicIntegerArray(PAGE_SIZE);
+			_stats[page] = new AtomicLongArray(PAGE_SIZE);
+		}
+		if (lastPage >= _numPages) {
+			_numPages = lastPage + 1;
+		}
 	}
-	
+
+	/**
+	 * This method sets the initial values for a newly allocated node.
+	 */
+	private void initialiseNode(int node, int move, long hash, Piece piece) {
+		_moves[node >>> PAGE_BITS][node & PAGE_MASK] = (byte) move;
+		_hashes[node >>> PAGE_BITS][node & PAGE_MASK] = hash;
+		_numChildren[node >>> PAGE_BITS][node & PAGE_MASK] = 0;
+		_flags[node >>> PAGE_BITS].set(node & PAGE_MASK, piece == Piece.X ? FLAG_PIECE_X : 0);
+		_stats[node >>> PAGE_BITS].set(node & PAGE_MASK, 0);
+		_firstChildren[node >>> PAGE_BITS].set(node & PAGE_MASK, NOT_EXPANDED);
+	}
+
+	/**
+	 * This method creates the children of a node: one for each legal move on the board, which must
+	 * be in the node's position. Only one thread can expand a node; if another thread is already
+	 * doing so, or the pool is full, this returns false and the node stays a leaf for now.
+	 */
+	public boolean expand(int node, SimulationBoard board) {
+		AtomicIntegerArray firstChildren = _firstChildren[node >>> PAGE_BITS];
+		if (!firstChildren.compareAndSet(node & PAGE_MASK, NOT_EXPANDED, EXPANDING)) {
+			return false;
+		}
+		int numLegalMoves = board.getNumLegalMoves();
+		int first = this.allocate(numLegalMoves);
+		if (first == -1) {
+			firstChildren.set(node & PAGE_MASK, NOT_EXPANDED);
+			return false;
+		}
+		Piece childPiece = this.getPiece(node).flip();
+		boolean isRegrown = (_flags[node >>> PAGE_BITS].get(node & PAGE_MASK) & FLAG_REGROWN) != 0;
+		for (int i = 0; i < numLegalMoves; i++) {
+			int move = board.getLegalMove(i);
+			this.initialiseNode(first + i, move, board.getHashAfterMove(move, childPiece), childPiece);
+			if (isRegrown) {
+				this.setFlag(first + i, FLAG_REGROWN);
+			}
+		}
+		_numChildren[node >>> PAGE_BITS][node & PAGE_MASK] = (byte) numLegalMoves;
+		// Publishing the first child last makes the children visible to other threads all at once.
+		firstChildren.set(node & PAGE_MASK, first);
+		return true;
+	}
+
+	/**
+	 * This method makes the tree share statistics between transpositions through the given table,
+	 * or stop doing so if it is null.
+	 */
+	public void setTranspositionTable(TranspositionTable transpositionTable) {
+		_transpositionTable = transpositionTable;
+	}
+
+	/**
+	 * This method gets the tree's transposition table, which may be null.
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return _transpositionTable;
+	}
+
 	/**
 	 * This method sets a node as the root of the tree.
 	 */
-	public void setRoot(MoveTreeNode node) {
+	public void setRoot(int node) {
 		_root = node;
 	}
-	
+
+	/**
+	 * This method moves the root of the tree down to the child for the move that was just played,
+	 * keeping the statistics already gathered for it. If the move was never explored, the tree
+	 * starts again from an empty node for the new position. Everything outside the new root's
+	 * subtree is then released (see reclaimNodes()). No search may be running on the tree.
+	 */
+	public void setRootToMove(int[] move) {
+		int encodedMove = SimulationBoard.encodeMove(move[0], move[1]);
+		int newRoot = -1;
+		for (int i = 0; i < this.getNumChildren(_root); i++) {
+			if (this.getMove(this.getFirstChild(_root) + i) == encodedMove) {
+				newRoot = this.getFirstChild(_root) + i;
+			}
+		}
+		if (newRoot == -1) {
+			newRoot = this.addRoot(this.getPiece(_root).flip(), 0);
+		}
+		this.setRoot(newRoot);
+		int oldNumNodes = this.getNumNodes();
+		this.reclaimNodes(0);
+		_numNodesRetained = this.getNumNodes();
+		_numNodesFreed = oldNumNodes - _numNodesRetained;
+	}
+
+	/**
+	 * This method makes sure the root of the tree is the given position (by its hash), so that a
+	 * tree grown for one position is never used to search another. If it is not, the whole tree is
+	 * thrown away and the search starts again from an empty root; the piece is the piece that played
+	 * the move leading to the position. The transposition table is kept, since its entries are
+	 * still right for their positions. No search may be running on the tree.
+	 */
+	public void setRootToPosition(long hash, Piece piece) {
+		if (this.getHash(_root) == hash && this.getPiece(_root) == piece) {
+			// The game is still going on at the root, so a proof without children to back it up has
+			// nothing to choose a move from.
+			if (this.getNumChildren(_root) == 0) {
+				this.clearProof(_root);
+			}
+			_numNodesRetained = this.getNumNodes();
+			_numNodesFreed = 0;
+			return;
+		}
+		int oldNumNodes = this.getNumNodes();
+		_numNodes.set(0);
+		this.setRoot(this.addRoot(piece, hash));
+		if (oldNumNodes > 1) {
+			this.setFlag(_root, FLAG_REGROWN);
+		}
+		_numNodesRetained = 1;
+		_numNodesFreed = oldNumNodes;
+	}
+
+	/**
+	 * This method sets the most nodes the tree may hold (between MIN_NODE_BUDGET and MAX_NODES). If
+	 * the tree already holds more, it is pruned straight away. No search may be running on the tree.
+	 */
+	public void setNodeBudget(int nodeBudget) {
+		_nodeBudget = Math.max(MIN_NODE_BUDGET, Math.min(MAX_NODES, nodeBudget));
+		if (this.isFull()) {
+			this.pruneColdSubtrees();
+		}
+	}
+
+	/**
+	 * This method returns whether the tree is too close to its node budget for a search to be sure
+	 * of expanding another node.
+	 */
+	public boolean isFull() {
+		return _numNodes.get() > _nodeBudget - MAX_CHILDREN;
+	}
+
+	/**
+	 * This method frees up room in a full tree. The nodes with the fewest playouts lose their
+	 * children (keeping their own statistics), so they become leaves again and are expanded afresh if
+	 * the search comes back to them. Just enough are pruned for the tree to fit in half its budget,
+	 * so there is room for the search to carry on. No search may be running on the tree.
+	 */
+	public void pruneColdSubtrees() {
+		// Counts the children of the expanded nodes below the root, grouped by the number of binary
+		// digits in the playouts of their parent.
+		int[] numChildrenByPlayouts = new int[32];
+		for (int i = 0; i < this.getNumChildren(_root); i++) {
+			this.countChildren(this.getFirstChild(_root) + i, numChildrenByPlayouts);
+		}
+		// Keeps the children of the most played nodes, group by group, while they fit.
+		int numNodes = 1 + this.getNumChildren(_root);
+		int digits = 32;
+		while (digits > 0 && numNodes + numChildrenByPlayouts[digits - 1] <= _nodeBudget / 2) {
+			digits--;
+			numNodes += numChildrenByPlayouts[digits];
+		}
+		this.reclaimNodes(digits == 0 ? 0 : 1L << (digits - 1));
+	}
+
+	/**
+	 * This method adds up the children of a node and all its descendants for pruneColdSubtrees().
+	 */
+	private void countChildren(int node, int[] numChildrenByPlayouts) {
+		int numChildren = this.getNumChildren(node);
+		if (numChildren == 0) {
+			return;
+		}
+		numChildrenByPlayouts[32 - Integer.numberOfLeadingZeros(this.getNumPlayouts(node))] += numChildren;
+		for (int i = 0; i < numChildren; i++) {
+			this.countChildren(this.getFirstChild(node) + i, numChildrenByPlayouts);
+		}
+	}
+
+	/**
+	 * This method copies the root's subtree into fresh pages of the spare pool and swaps the two
+	 * pools, so the nodes of the moves that were not played can be garbage collected. The copy keeps
+	 * each node's children next to each other, and the root becomes node 0. Below the root's
+	 * children, only nodes with at least minPlayouts playouts keep their children.
+	 */
+	private void reclaimNodes(long minPlayouts) {
+		if (_spareTree == null) {
+			_spareTree = new MoveTree();
+		}
+		MoveTree retained = _spareTree;
+		int newRoot = retained.allocate(1);
+		retained.copyNode(this, _root, newRoot);
+		retained.copyChildren(this, _root, newRoot, minPlayouts);
+
+		byte[][] moves = _moves;
+		long[][] hashes = _hashes;
+		byte[][] numChildren = _numChildren;
+		AtomicIntegerArray[] firstChildren = _firstChildren;
+		AtomicIntegerArray[] flags = _flags;
+		AtomicLongArray[] stats = _stats;
+		AtomicInteger numNodes = _numNodes;
+		int numPages = _numPages;
+		_moves = retained._moves;
+		_hashes = retained._hashes;
+		_numChildren = retained._numChildren;
+		_firstChildren = retained._firstChildren;
+		_flags = retained._flags;
+		_stats = retained._stats;
+		_numNodes = retained._numNodes;
+		_numPages = retained._numPages;
+		retained._moves = moves;
+		retained._hashes = hashes;
+		retained._numChildren = numChildren;
+		retained._firstChildren = firstChildren;
+		retained._flags = flags;
+		retained._stats = stats;
+		retained._numNodes = numNodes;
+		retained._numPages = numPages;
+		retained.releasePages();
+		this.setRoot(newRoot);
+	}
+
+	/**
+	 * This method empties the pool, dropping its pages so they can be garbage collected but keeping
+	 * the tables that refer to them.
+	 */
+	private void releasePages() {
+		for (int page = 0; page < _numPages; page++) {
+			_moves[page] = null;
+			_hashes[page] = null;
+			_numChildren[page] = null;
+			_firstChildren[page] = null;
+			_flags[page] = null;
+			_stats[page] = null;
+		}
+		_numNodes.set(0);
+		_numPages = 0;
+	}
+
+	/**
+	 * This method copies the children of a node in another tree (and, recursively, all of their
+	 * descendants with at least minPlayouts playouts) into this tree, below the given node. The depth
+	 * of the recursion is at most the number of moves left in the game.
+	 */
+	private void copyChildren(MoveTree tree, int node, int newNode, long minPlayouts) {
+		int numChildren = tree.getNumChildren(node);
+		if (numChildren == 0) {
+			return;
+		}
+		int firstChild = tree.getFirstChild(node);
+		int newFirstChild = this.allocate(numChildren);
+		for (int i = 0; i < numChildren; i++) {
+			this.copyNode(tree, firstChild + i, newFirstChild + i);
+		}
+		_numChildren[newNode >>> PAGE_BITS][newNode & PAGE_MASK] = (byte) numChildren;
+		_firstChildren[newNode >>> PAGE_BITS].set(newNode & PAGE_MASK, newFirstChild);
+		for (int i = 0; i < numChildren; i++) {
+			if (tree.getNumPlayouts(firstChild + i) >= minPlayouts) {
+				this.copyChildren(tree, firstChild + i, newFirstChild + i, minPlayouts);
+			} else if (tree.getNumChildren(firstChild + i) != 0) {
+				// A proof only holds while the node keeps the children it was proven from.
+				this.clearProof(newFirstChild + i);
+				this.setFlag(newFirstChild + i, FLAG_REGROWN);
+			}
+		}
+	}
+
+	/**
+	 * This method forgets a node's proven result, e.g. when its children are pruned. The search stops
+	 * at proven nodes, so a proven node without children would never be expanded again, and if the
+	 * game reached it there would be no moves to choose from. No search may be running on the tree.
+	 */
+	private void clearProof(int node) {
+		AtomicIntegerArray flags = _flags[node >>> PAGE_BITS];
+		flags.set(node & PAGE_MASK, flags.get(node & PAGE_MASK) & ~FLAGS_PROVEN);
+	}
+
+	/**
+	 * This method copies everything about a node in another tree except its children into a node
+	 * of this tree.
+	 */
+	private void copyNode(MoveTree tree, int node, int newNode) {
+		_moves[newNode >>> PAGE_BITS][newNode & PAGE_MASK] = (byte) tree.getMove(node);
+		_hashes[newNode >>> PAGE_BITS][newNode & PAGE_MASK] = tree.getHash(node);
+		_numChildren[newNode >>> PAGE_BITS][newNode & PAGE_MASK] = 0;
+		int flags = tree._flags[node >>> PAGE_BITS].get(node & PAGE_MASK);
+		long stats = tree._stats[node >>> PAGE_BITS].get(node & PAGE_MASK);
+		_flags[newNode >>> PAGE_BITS].set(newNode & PAGE_MASK, flags);
+		_stats[newNode >>> PAGE_BITS].set(newNode & PAGE_MASK, stats);
+		_firstChildren[newNode >>> PAGE_BITS].set(newNode & PAGE_MASK, NOT_EXPANDED);
+	}
+
+	/**
+	 * This method returns how many nodes were kept the last time the root was moved.
+	 */
+	public int getNumNodesRetained() {
+		return _numNodesRetained;
+	}
+
+	/**
+	 * This method returns how many nodes were released the last time the root was moved.
+	 */
+	public int getNumNodesFreed() {
+		return _numNodesFreed;
+	}
+
 	/**
 	 * This method gets the tree's root.
 	 */
-	public MoveTreeNode getRoot() {
+	public int getRoot() {
 		return _root;
 	}
+
+	/**
+	 * This method returns the move represented by a node, encoded as in SimulationBoard, or -1 for a
+	 * root with no move.
+	 */
+	public int getMove(int node) {
+		return _moves[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	/**
+	 * This method returns the Zobrist hash of the position after a node's move, or 0 for a root
+	 * with no move.
+	 */
+	public long getHash(int node) {
+		return _hashes[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	/**
+	 * This method returns the piece which the node's move corresponds to.
+	 */
+	public Piece getPiece(int node) {
+		return (_flags[node >>> PAGE_BITS].get(node & PAGE_MASK) & FLAG_PIECE_X) != 0 ? Piece.X : Piece.O;
+	}
+
+	/**
+	 * This method returns the index of a node's first child, or NOT_EXPANDED if it has no children
+	 * yet. The other children follow it in the pool.
+	 */
+	public int getFirstChild(int node) {
+		int firstChild = _firstChildren[node >>> PAGE_BITS].get(node & PAGE_MASK);
+		return firstChild == EXPANDING ? NOT_EXPANDED : firstChild;
+	}
+
+	/**
+	 * This method returns how many children a node has (0 if it has not been expanded).
+	 */
+	public int getNumChildren(int node) {
+		if (this.getFirstChild(node) == NOT_EXPANDED) {
+			return 0;
+		}
+		return _numChildren[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	/**
+	 * This method returns how many nodes have been created in the pool.
+	 */
+	public int getNumNodes() {
+		return Math.min(_numNodes.get(), _nodeBudget);
+	}
+
+	/**
+	 * This method returns the proven result of a node for the player who made its move: WIN, LOSE or
+	 * DRAW, or NOWIN if it is not known for certain.
+	 */
+	public GameState getProvenResult(int node) {
+		int flags = _flags[node >>> PAGE_BITS].get(node & PAGE_MASK);
+		if ((flags & FLAG_PROVEN_WIN) != 0) {
+			return GameState.WIN;
+		} else if ((flags & FLAG_PROVEN_LOSS) != 0) {
+			return GameState.LOSE;
+		} else if ((flags & FLAG_PROVEN_DRAW) != 0) {
+			return GameState.DRAW;
+		}
+		return GameState.NOWIN;
+	}
+
+	/**
+	 * This method returns whether a node's result is proven.
+	 */
+	public boolean isProven(int node) {
+		return (_flags[node >>> PAGE_BITS].get(node & PAGE_MASK) & FLAGS_PROVEN) != 0;
+	}
+
+	/**
+	 * This method marks a node's result (WIN, LOSE or DRAW for the player who made its move) as
+	 * proven, e.g. when its move ends the game. A node is only ever proven once.
+	 */
+	public void setProvenResult(int node, GameState result) {
+		if (this.isProven(node)) {
+			return;
+		}
+		if (result == GameState.WIN) {
+			this.setFlag(node, FLAG_PROVEN_WIN);
+		} else if (result == GameState.LOSE) {
+			this.setFlag(node, FLAG_PROVEN_LOSS);
+		} else {
+			this.setFlag(node, FLAG_PROVEN_DRAW);
+		}
+	}
+
+	/**
+	 * This method works out from its children whether a node's result is now proven, and marks it if
+	 * so. The node is a proven loss if any reply is a proven win, a proven win if every reply is a
+	 * proven loss, and a proven draw if every reply is proven and the best of them is a draw. It
+	 * returns whether the node is proven.
+	 */
+	public boolean updateProof(int node) {
+		if (this.isProven(node)) {
+			return true;
+		}
+		int numChildren = this.getNumChildren(node);
+		if (numChildren == 0) {
+			return false;
+		}
+		boolean allProven = true;
+		boolean allLost = true;
+		for (int i = 0; i < numChildren; i++) {
+			GameState result = this.getProvenResult(this.getFirstChild(node) + i);
+			if (result == GameState.WIN) {
+				this.setProvenResult(node, GameState.LOSE);
+				return true;
+			} else if (result == GameState.NOWIN) {
+				allProven = false;
+			} else if (result == GameState.DRAW) {
+				allLost = false;
+			}
+		}
+		if (!allProven) {
+			return false;
+		}
+		this.setProvenResult(node, allLost ? GameState.WIN : GameState.DRAW);
+		return true;
+	}
+
+	/**
+	 * This method notes that a node's move wins a small board in the Ultimate game, and so that its
+	 * parent's move gave that board away (see getUCBStat()).
+	 */
+	public void setAsSmallBoardWin(int node, int parent) {
+		this.setFlag(node, FLAG_WINS_SMALL_BOARD);
+		this.setFlag(parent, FLAG_GIVES_SMALL_BOARD);
+	}
+
+	/**
+	 * This method notes that a node's move sends the opponent to a board which is already finished,
+	 * letting them move anywhere (see getUCBStat()).
+	 */
+	public void setAsSendingToFinishedBoard(int node) {
+		this.setFlag(node, FLAG_SENDS_TO_FINISHED_BOARD);
+	}
+
+	/**
+	 * This method sets a flag of a node, returning true if it was not already set.
+	 */
+	private boolean setFlag(int node, int flag) {
+		AtomicIntegerArray flags = _flags[node >>> PAGE_BITS];
+		int oldFlags;
+		do {
+			oldFlags = flags.get(node & PAGE_MASK);
+			if ((oldFlags & flag) != 0) {
+				return false;
+			}
+		} while (!flags.compareAndSet(node & PAGE_MASK, oldFlags, oldFlags | flag));
+		return true;
+	}
+
+	/**
+	 * This method returns the UCB1 algorithmic statistic for a node's move, given the number of
+	 * playouts of its parent. This is used to determine how the move tree is traversed by the program.
+	 *
+	 * In the Ultimate game, finishing a small board doesn't end the game, and the tree can only go so
+	 * far down in the time for a move, so the search is not strongly incentivised to win boards or
+	 * to stop the opponent from winning them. The statistic therefore has a bonus for a move which
+	 * wins a small board and penalties for a move which gives one away or lets the opponent move
+	 * anywhere. These fade as the node is played out, so they steer the search early on without
+	 * overruling what the playouts find.
+	 *
+	 * A move which is proven to lose is never worth playing out again, so its statistic is minus
+	 * infinity.
+	 */
+	public double getUCBStat(int node, int parentPlayouts) {
+		int flags = _flags[node >>> PAGE_BITS].get(node & PAGE_MASK);
+		if ((flags & FLAG_PROVEN_LOSS) != 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		// Reads the statistics once so that the wins and playouts are consistent with each other.
+		long stats = _stats[node >>> PAGE_BITS].get(node & PAGE_MASK);
+		// Only nodes with transpositions need to look at the table.
+		if (_transpositionTable != null && (flags & FLAG_TRANSPOSED) != 0) {
+			long sharedStats = _transpositionTable.peek(this.getHash(node));
+			if (MoveTree.unpackPlayouts(sharedStats) > MoveTree.unpackPlayouts(stats)) {
+				stats = sharedStats;
+			}
+		}
+		int wins = MoveTree.unpackWins(stats);
+		int playouts = MoveTree.unpackPlayouts(stats);
+		double heuristic = ((flags & FLAG_WINS_SMALL_BOARD) != 0 ? 0.5 : 0)
+				- ((flags & FLAG_GIVES_SMALL_BOARD) != 0 ? 1 : 0)
+				- ((flags & FLAG_SENDS_TO_FINISHED_BOARD) != 0 ? 0.2 : 0);
+		return ((float) wins / playouts + Math.sqrt(5 * Math.log((float) parentPlayouts) / (float) playouts)
+				+ heuristic * HEURISTIC_WEIGHT / (playouts + 1));
+	}
+
+	/**
+	 * This method returns whether the position of a node which has just been reached for the first
+	 * time has already been played out through another order of moves, according to the
+	 * transposition table. Below a branch that was thrown away and is being grown again, the table
+	 * is still used, but the lookup does not count towards the hit rate, since the statistics are
+	 * most likely the branch's own old ones.
+	 */
+	public boolean isTransposition(int node) {
+		if (_transpositionTable == null) {
+			return false;
+		}
+		long hash = this.getHash(node);
+		boolean isRegrown = (_flags[node >>> PAGE_BITS].get(node & PAGE_MASK) & FLAG_REGROWN) != 0;
+		long sharedStats = isRegrown ? _transpositionTable.peek(hash) : _transpositionTable.lookup(hash);
+		if (MoveTree.unpackPlayouts(sharedStats) == 0) {
+			return false;
+		}
+		this.setFlag(node, FLAG_TRANSPOSED);
+		return true;
+	}
+
+	/**
+	 * This method returns the statistic for number of playouts for a node and its children.
+	 */
+	public int getNumPlayouts(int node) {
+		return MoveTree.unpackPlayouts(_stats[node >>> PAGE_BITS].get(node & PAGE_MASK));
+	}
+
+	/**
+	 * This method returns the statistic for number of wins initiated from a node.
+	 */
+	public int getWins(int node) {
+		return MoveTree.unpackWins(_stats[node >>> PAGE_BITS].get(node & PAGE_MASK));
+	}
+
+	/**
+	 * This method updates a node's statistics with the results of one or more playouts. winsChange
+	 * is the number of those playouts that were won minus the number that were lost.
+	 */
+	public void updateStats(int node, int winsChange, int numPlayouts) {
+		_stats[node >>> PAGE_BITS].getAndAdd(node & PAGE_MASK, MoveTree.packStats(winsChange, numPlayouts));
+		this.shareStats(node, winsChange, numPlayouts);
+	}
+
+	/**
+	 * This method adds a virtual loss to a node: a playout that is counted as lost until its real
+	 * result is known. While a thread is playing out below this node, the loss makes the node look
+	 * worse to other threads searching the same tree, which spreads them across different branches.
+	 */
+	public void addVirtualLoss(int node) {
+		_stats[node >>> PAGE_BITS].getAndAdd(node & PAGE_MASK, MoveTree.packStats(-1, 1));
+	}
+
+	/**
+	 * This method replaces a virtual loss added by addVirtualLoss() with the real results of the
+	 * playouts, in the same form as updateStats().
+	 */
+	public void updateStatsAfterVirtualLoss(int node, int winsChange, int numPlayouts) {
+		// One playout has already been counted, as a loss.
+		_stats[node >>> PAGE_BITS].getAndAdd(node & PAGE_MASK, MoveTree.packStats(winsChange + 1, numPlayouts - 1));
+		this.shareStats(node, winsChange, numPlayouts);
+	}
+
+	/**
+	 * This method adds the results of some playouts to the transposition table entry for a node's
+	 * position, if there is a table. Roots made without a move have no hash, so are left out.
+	 */
+	private void shareStats(int node, int winsChange, int numPlayouts) {
+		if (_transpositionTable == null || this.getMove(node) == -1) {
+			return;
+		}
+		long sharedStats = _transpositionTable.update(this.getHash(node), winsChange, numPlayouts);
+		// If other nodes have added to the entry, this node has transpositions.
+		if (MoveTree.unpackPlayouts(sharedStats) > this.getNumPlayouts(node)) {
+			this.setFlag(node, FLAG_TRANSPOSED);
+		}
+	}
+
+	/**
+	 * This static method packs wins and playouts into one long. Adding two packed values adds both
+	 * statistics, even when the wins are negative.
+	 */
+	static long packStats(int wins, int playouts) {
+		return ((long) wins << 32) + playouts;
+	}
+
+	/**
+	 * This static method gets the wins out of packed statistics.
+	 */
+	static int unpackWins(long stats) {
+		return (int) (stats >> 32);
+	}
+
+	/**
+	 * This static method gets the playouts out of packed statistics.
+	 */
+	static int unpackPlayouts(long stats) {
+		return (int) stats;
+	}
 }
@@ -9,6 +9,7 @@ import javafx.scene.layout.Pane;
  */
 public class PaneOrganizer {
 	private Pane _root;
+	private TicTacToe _ticTacToe;
 
 	public PaneOrganizer() {
 		_root = new Pane();
@@ -17,14 +18,14 @@ public class PaneOrganizer {
 		// colour) strip left.
 		_root.setStyle("-fx-background-color:white");
 
-		TicTacToe ticTacToe = new TicTacToe();
+		_ticTacToe = new TicTacToe();
 		StatusBar statusBar = new StatusBar();
 
 		// TicTacToe needs to have knowledge of status bar so that it can set the text when game
 		// state changes.
-		ticTacToe.setStatusBar(statusBar);
+		_ticTacToe.setStatusBar(statusBar);
 
-		_root.getChildren().addAll(ticTacToe.getPane(), statusBar.getPane());
+		_root.getChildren().addAll(_ticTacToe.getPane(), statusBar.getPane());
 	}
 
 	/**
@@ -33,4 +34,11 @@ public class PaneOrganizer {
 	public Pane getRoot() {
 		return _root;
 	}
+
+	/**
+	 * Stops the game's computer players, so that none is left thinking once the window is closed.
+	 */
+	public void stopGame() {
+		_ticTacToe.stopComputerPlayers();
+	}
 }
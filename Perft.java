@@ -0,0 +1,275 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class is a perft ("performance test") tool for the rules: it counts every sequence of legal
+ * moves of a given length from a position, using SimulationBoard's move generation. The counts for
+ * the start position never change unless the rules do, so they are an easy check that a faster
+ * move generator is still right, and timing them measures how fast the moves are generated.
+ *
+ * The count can be split by the first move ("divide"), which narrows a wrong count down to the
+ * move it comes from, and the first moves can be shared out between the threads of a fork-join
+ * pool. A game that ends before the given depth adds nothing to the count. At the last level the
+ * legal moves are only counted, not made.
+ *
+ * With -validate, the tool also walks the same tree with a dummy Board, whose getLegalMoves(),
+ * checkWin() and checkFinishedBoards() are the reference version of the rules, and stops at the
+ * first position where the two boards disagree. This needs JavaFX on the class path; the rest does
+ * not.
+ *
+ * Usage: java TicTacToe.Perft [-depth n] [-setting BASIC|ULTIMATE] [-moves "x,y x,y ..."]
+ * [-threads n] [-divide] [-validate], where the moves lead to the position to count from, with X
+ * moving first.
+ */
+public class Perft {
+	private GameSetting _gameSetting;
+	private int _depth;
+	private ArrayList<int[]> _moves;
+	private int _numThreads;
+	private boolean _divide;
+	private boolean _validate;
+
+	/**
+	 * This is the entry point of the perft tool. It reads the options (see the class comment) and
+	 * counts the moves.
+	 */
+	public static void main(String[] args) {
+		Perft perft = new Perft();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-divide")) {
+				perft._divide = true;
+			} else if (args[i].equals("-validate")) {
+				perft._validate = true;
+			} else if (i + 1 < args.length && args[i].equals("-depth")) {
+				perft._depth = Integer.parseInt(args[++i]);
+			} else if (i + 1 < args.length && args[i].equals("-setting")) {
+				perft._gameSetting = GameSetting.valueOf(args[++i].toUpperCase());
+			} else if (i + 1 < args.length && args[i].equals("-threads")) {
+				perft._numThreads = Integer.parseInt(args[++i]);
+			} else if (i + 1 < args.length && args[i].equals("-moves")) {
+				for (String move : args[++i].trim().split("\\s+")) {
+					String[] coordinates = move.split(",");
+					perft._moves.add(new int[] { Integer.parseInt(coordinates[0]), Integer.parseInt(coordinates[1]) });
+				}
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(1);
+			}
+		}
+		perft.run();
+	}
+
+	/**
+	 * This constructor sets up the default run: depth 4 from the start of an Ultimate game, on one
+	 * thread per processor.
+	 */
+	public Perft() {
+		_gameSetting = GameSetting.ULTIMATE;
+		_depth = 4;
+		_moves = new ArrayList<int[]>();
+		_numThreads = Constants.COMPUTER_THREADS;
+	}
+
+	/**
+	 * This method counts the move sequences from the position and prints the count, the time it took
+	 * and the number of positions counted per second, split by first move if asked to.
+	 */
+	public void run() {
+		SimulationBoard position = new SimulationBoard(_gameSetting);
+		Piece piece = Piece.X;
+		for (int[] move : _moves) {
+			position.makeMove(move, piece);
+			piece = piece.flip();
+		}
+
+		if (_validate) {
+			Board board = new Board(_gameSetting, true);
+			Piece boardPiece = Piece.X;
+			for (int[] move : _moves) {
+				this.playMove(board, move, boardPiece);
+				boardPiece = boardPiece.flip();
+			}
+			long startTime = System.nanoTime();
+			long count = this.validate(board, piece.flip(), position, piece, _depth);
+			System.out.println(String.format("Validated against Board: %d positions in %.0f ms", count,
+					(System.nanoTime() - startTime) / 1e6));
+		}
+
+		long startTime = System.nanoTime();
+		long[] counts = this.divide(position, piece, _depth);
+		long time = System.nanoTime() - startTime;
+		long total = 0;
+		for (int move = 0; move < counts.length; move++) {
+			if (_divide && counts[move] != -1) {
+				System.out.println(SimulationBoard.decodeX(move) + "," + SimulationBoard.decodeY(move) + ": "
+						+ counts[move]);
+			}
+			total += Math.max(0, counts[move]);
+		}
+		if (_depth == 0) {
+			total = 1;
+		}
+		System.out.println("Nodes: " + total);
+		System.out.println(String.format("Time: %.0f ms", time / 1e6));
+		System.out.println(String.format("Nodes/s: %.0f", total / (time / 1e9)));
+	}
+
+	/**
+	 * This method counts the move sequences from the position for each first move, sharing the first
+	 * moves out between the threads of a fork-join pool. It returns the counts indexed by encoded
+	 * move, with -1 for the moves which are not legal.
+	 */
+	public long[] divide(SimulationBoard position, Piece piece, int depth) {
+		long[] counts = new long[81];
+		Arrays.fill(counts, -1);
+		if (depth == 0 || position.getGameState() != GameState.NOWIN) {
+			return counts;
+		}
+		ArrayList<PerftTask> tasks = new ArrayList<PerftTask>();
+		for (int i = 0; i < position.getNumLegalMoves(); i++) {
+			tasks.add(new PerftTask(_gameSetting, position, position.getLegalMove(i), piece, depth - 1));
+		}
+		ForkJoinPool pool = new ForkJoinPool(_numThreads);
+		try {
+			for (PerftTask task : tasks) {
+				pool.execute(task);
+			}
+			for (PerftTask task : tasks) {
+				counts[task.getMove()] = task.join();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return counts;
+	}
+
+	/**
+	 * This static method counts the move sequences of the given length from the board's position,
+	 * with the given piece to move. The board is back in the same position afterwards.
+	 */
+	public static long perft(SimulationBoard board, Piece piece, int depth) {
+		if (board.getGameState() != GameState.NOWIN) {
+			return depth == 0 ? 1 : 0;
+		}
+		if (depth == 0) {
+			return 1;
+		}
+		// The positions at the last level are only counted.
+		int numLegalMoves = board.getNumLegalMoves();
+		if (depth == 1) {
+			return numLegalMoves;
+		}
+		long count = 0;
+		for (int i = 0; i < numLegalMoves; i++) {
+			board.makeMove(board.getLegalMove(i), piece);
+			count += Perft.perft(board, piece.flip(), depth - 1);
+			board.undoMove();
+		}
+		return count;
+	}
+
+	/**
+	 * This method counts the same move sequences as perft(), walking a dummy Board through them
+	 * alongside the SimulationBoard. At every position it checks that the two agree on whether the
+	 * game is over, whether it was drawn, and which moves are legal (in the same order), and throws an
+	 * IllegalStateException if they do not. lastPiece is the piece which made the Board's last move.
+	 */
+	public long validate(Board board, Piece lastPiece, SimulationBoard position, Piece piece, int depth) {
+		boolean[] win = board.getIsFirstMove() ? new boolean[] { false, false }
+				: Board.checkWin(board, lastPiece, _gameSetting);
+		if (win[0] != (position.getGameState() != GameState.NOWIN)
+				|| win[1] != (position.getGameState() == GameState.DRAW)) {
+			throw new IllegalStateException("The boards disagree about whether the game is over after "
+					+ Perft.describeMove(board.getPreviousMove()));
+		}
+		if (win[0] || depth == 0) {
+			return win[0] && depth > 0 ? 0 : 1;
+		}
+
+		ArrayList<int[]> legalMoves = board.getLegalMoves();
+		ArrayList<int[]> positionLegalMoves = position.getLegalMoves();
+		if (legalMoves.size() != positionLegalMoves.size()) {
+			throw new IllegalStateException("The boards disagree about the number of legal moves after "
+					+ Perft.describeMove(board.getPreviousMove()));
+		}
+		long count = 0;
+		for (int i = 0; i < legalMoves.size(); i++) {
+			int[] move = legalMoves.get(i);
+			if (move[0] != positionLegalMoves.get(i)[0] || move[1] != positionLegalMoves.get(i)[1]) {
+				throw new IllegalStateException("The boards disagree about the legal moves after "
+						+ Perft.describeMove(board.getPreviousMove()));
+			}
+			Board child = new Board(_gameSetting, true, board);
+			this.playMove(child, move, piece);
+			position.makeMove(move, piece);
+			count += this.validate(child, piece, position, piece.flip(), depth - 1);
+			position.undoMove();
+		}
+		return count;
+	}
+
+	/**
+	 * This method plays a move on a dummy Board, in the same way as the computer player used to
+	 * before it had SimulationBoard.
+	 */
+	private void playMove(Board board, int[] move, Piece piece) {
+		board.getBoardArray()[move[0]][move[1]].setPiece(piece);
+		if (_gameSetting == GameSetting.ULTIMATE) {
+			Board.checkFinishedBoards(board, piece);
+		}
+		board.setPreviousMove(move);
+		board.setIsFirstMove(false);
+	}
+
+	/**
+	 * This static method describes a move for an error message.
+	 */
+	private static String describeMove(int[] move) {
+		return move == null ? "the start" : move[0] + "," + move[1];
+	}
+
+	/**
+	 * This inner class counts the move sequences below one first move, on its own copy of the
+	 * position, as a task in a fork-join pool.
+	 */
+	private static class PerftTask extends RecursiveTask<Long> {
+		// ForkJoinTask is Serializable, though these tasks are never serialized.
+		private static final long serialVersionUID = 1L;
+
+		private SimulationBoard _board;
+		private int _move;
+		private Piece _piece;
+		private int _depth;
+
+		/**
+		 * This constructor copies the position and makes the task's first move on the copy.
+		 */
+		public PerftTask(GameSetting gameSetting, SimulationBoard position, int move, Piece piece, int depth) {
+			_board = new SimulationBoard(gameSetting);
+			_board.copyBoard(position);
+			_board.makeMove(move, piece);
+			_move = move;
+			_piece = piece.flip();
+			_depth = depth;
+		}
+
+		/**
+		 * This method returns the task's first move.
+		 */
+		public int getMove() {
+			return _move;
+		}
+
+		/**
+		 * This method counts the move sequences after the first move.
+		 */
+		@Override
+		protected Long compute() {
+			return Perft.perft(_board, _piece, _depth);
+		}
+	}
+}
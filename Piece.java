@@ -0,0 +1,27 @@
+package TicTacToe;
+
+/**
+ * This enum represents possible TicTacToe pieces. The third option, NEITHER, exists because
+ * this enum is also used to encode which boards have been won in the Ultimate version of the
+ * game. Since boards can be drawn (neither won nor lost), there must be a state for a completed
+ * board won by neither player. This may seem a bit inelegant but the alternatives would be to
+ * either use the Square class (which would include a bunch of useless visual stuff for a purely
+ * logical data structure) or to create a new, very similar enum just for won boards. Both
+ * alternatives would have added superfluous code.
+ */
+public enum Piece {
+	X, O, NEITHER;
+
+	/**
+	 * This method returns the opposite of a piece. NEITHER has no opposite, so it returns null.
+	 */
+	public Piece flip() {
+		if (this == X) {
+			return O;
+		} else if (this == O) {
+			return X;
+		} else {
+			return null;
+		}
+	}
+}
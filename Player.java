@@ -2,8 +2,6 @@ package TicTacToe;
 
 import java.util.Random;
 
-import TicTacToe.Square.Piece;
-
 /**
  * This abstract class is for a generic player (used by the ComputerPlayer and HumanPlayer classes).
  * This inheritance allows them to be held in homogeneous data structures (e.g. arrays of type
@@ -25,7 +23,7 @@ public abstract class Player {
 	 * players don't randomly choose the same piece.
 	 */
 	public Player(Piece piece) {
-		_piece = TicTacToe.flipPiece(piece);
+		_piece = piece.flip();
 	}
 
 	/**
@@ -0,0 +1,83 @@
+package TicTacToe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is a JDK Flight Recorder event describing one of the Engine's searches, so that what
+ * the engine does with its time can be seen in a recording (e.g. one started with
+ * -XX:StartFlightRecording) and looked at in JDK Mission Control. When no recording has the event
+ * enabled, the engine skips filling it in, and does not time the phases of its iterations.
+ *
+ * Unlike the rest of the project, the fields have no underscores, since their names are the names
+ * of the event's fields in the recording.
+ */
+@Name("TicTacToe.Search")
+@Label("Search")
+@Category({ "TicTacToe", "Engine" })
+@Description("One search for a move by the computer's engine")
+@StackTrace(false)
+public class SearchEvent extends Event {
+	@Label("Iterations")
+	@Description("The number of times the tree was improved, over all the search threads")
+	long iterations;
+
+	@Label("Nodes Created")
+	long nodesCreated;
+
+	@Label("Nodes Reused")
+	@Description("The size of the trees kept from earlier searches after re-rooting them")
+	long nodesReused;
+
+	@Label("Max Depth")
+	int maxDepth;
+
+	@Label("Average Depth")
+	double averageDepth;
+
+	@Label("Playouts Per Second")
+	double playoutsPerSecond;
+
+	@Label("Move X")
+	int moveX;
+
+	@Label("Move Y")
+	int moveY;
+
+	@Label("Visit Share")
+	@Description("The share of the playouts through the root which went through the chosen move")
+	@Percentage
+	double visitShare;
+
+	@Label("Win Rate")
+	@Description("The chosen move's share of playouts won, counting a draw as half a win")
+	@Percentage
+	double winRate;
+
+	@Label("Transposition Hit Rate")
+	@Description("The share of the new positions looked up in the transposition tables which were found")
+	@Percentage
+	double transpositionHitRate;
+
+	@Label("Select Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long selectTime;
+
+	@Label("Expand Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long expandTime;
+
+	@Label("Rollout Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long rolloutTime;
+
+	@Label("Backup Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long backupTime;
+}
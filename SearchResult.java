@@ -0,0 +1,137 @@
+package TicTacToe;
+
+/**
+ * This class holds what the Engine found in one search: the move it chose and some statistics
+ * about the search, e.g. for a benchmark or for showing how sure the computer is of its move.
+ */
+public class SearchResult {
+	private int[] _move;
+	private int _wins;
+	private int _numPlayouts;
+	private long _numRootPlayouts;
+	private long _numNewPlayouts;
+	private long _numNodes;
+	private long _numTranspositionLookups;
+	private long _numTranspositionHits;
+	private long _numNodesRetained;
+	private long _numNodesFreed;
+	private long _searchTime;
+
+	/**
+	 * This constructor is called by the Engine at the end of a search.
+	 */
+	public SearchResult(int[] move, int wins, int numPlayouts, long numRootPlayouts, long numNewPlayouts, long numNodes,
+			long numTranspositionLookups, long numTranspositionHits, long numNodesRetained, long numNodesFreed,
+			long searchTime) {
+		_move = move;
+		_wins = wins;
+		_numPlayouts = numPlayouts;
+		_numRootPlayouts = numRootPlayouts;
+		_numNewPlayouts = numNewPlayouts;
+		_numNodes = numNodes;
+		_numTranspositionLookups = numTranspositionLookups;
+		_numTranspositionHits = numTranspositionHits;
+		_numNodesRetained = numNodesRetained;
+		_numNodesFreed = numNodesFreed;
+		_searchTime = searchTime;
+	}
+
+	/**
+	 * This method returns the chosen move as x,y coordinates.
+	 */
+	public int[] getMove() {
+		return _move;
+	}
+
+	/**
+	 * This method returns the average result of the chosen move's playouts for the engine, from 1
+	 * (all won) to -1 (all lost). Draws count as 0. If the endgame solver found the move, it counts as
+	 * played out once, so this is its exact result.
+	 */
+	public double getScore() {
+		return (double) _wins / _numPlayouts;
+	}
+
+	/**
+	 * This method returns how many playouts went through the chosen move.
+	 */
+	public int getNumPlayouts() {
+		return _numPlayouts;
+	}
+
+	/**
+	 * This method returns how many playouts went through all the top level moves together,
+	 * including any gathered before the search (e.g. while pondering).
+	 */
+	public long getNumRootPlayouts() {
+		return _numRootPlayouts;
+	}
+
+	/**
+	 * This method returns how many playouts were played during the search itself, which is what the
+	 * engine's speed should be measured by.
+	 */
+	public long getNumNewPlayouts() {
+		return _numNewPlayouts;
+	}
+
+	/**
+	 * This method returns how many nodes the game trees held at the end of the search.
+	 */
+	public long getNumNodes() {
+		return _numNodes;
+	}
+
+	/**
+	 * This method returns the share of new positions reached during the search whose statistics
+	 * were shared from a transposition (another node with the same position), or 0 if transpositions
+	 * are not in use. Positions reached again only because their branch was pruned or the tree was
+	 * started afresh are left out.
+	 */
+	public double getTranspositionHitRate() {
+		if (_numTranspositionLookups == 0) {
+			return 0;
+		}
+		return (double) _numTranspositionHits / _numTranspositionLookups;
+	}
+
+	/**
+	 * This method returns how many new positions reached during the search were looked up in the
+	 * transposition tables.
+	 */
+	public long getNumTranspositionLookups() {
+		return _numTranspositionLookups;
+	}
+
+	/**
+	 * This method returns how many new positions reached during the search had their statistics
+	 * shared from a transposition.
+	 */
+	public long getNumTranspositionHits() {
+		return _numTranspositionHits;
+	}
+
+	/**
+	 * This method returns how many nodes of the game trees were kept for the next move after the
+	 * move was chosen.
+	 */
+	public long getNumNodesRetained() {
+		return _numNodesRetained;
+	}
+
+	/**
+	 * This method returns how many nodes of the game trees were released during the search: the
+	 * branches of the opponent's moves that were not played and of the engine's own moves that were
+	 * not chosen.
+	 */
+	public long getNumNodesFreed() {
+		return _numNodesFreed;
+	}
+
+	/**
+	 * This method returns how long the search took in nanoseconds.
+	 */
+	public long getSearchTime() {
+		return _searchTime;
+	}
+}
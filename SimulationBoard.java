@@ -0,0 +1,529 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * This class is a purely logical board used by the Engine for its playouts. Instead of
+ * holding a grid of Squares, it stores each small board as two 9-bit masks (one for X and one for
+ * O) and the big board as three more masks recording which small boards are won by X, won by O or
+ * drawn. Copying and updating it is just a handful of int operations, so the algorithm can play
+ * many more games in its time budget without creating garbage.
+ *
+ * Moves are encoded as a single int: 9 * (index of the small board) + (index of the square inside
+ * the small board), where both indices count along rows from the top left corner. For the Basic
+ * game there is only one "small board" (index 0). The rules implemented here are exactly those of
+ * Board.getLegalMoves(), Board.checkWin() and Board.checkFinishedBoards().
+ *
+ * The board also keeps a Zobrist hash of its position up to date as moves are made and undone. Each
+ * piece on each square, and each finished small board, has a fixed random key, and the hash is the
+ * exclusive or of the keys of everything on the board. The board the next player is sent to is
+ * mixed in by getHash(), along with which piece moved last. Positions reached by different orders
+ * of the same moves therefore have the same hash, which lets the computer recognise transpositions
+ * (see TranspositionTable).
+ */
+public class SimulationBoard {
+	// Masks of the eight three-in-a-row lines of a 3x3 board, using bit (3 * y + x) for square x,y.
+	private static final int[] LINES = { 0007, 0070, 0700, 0111, 0222, 0444, 0421, 0124 };
+	private static final int FULL_BOARD = 0777;
+	// Lookup table saying whether each of the 512 possible 3x3 masks contains a three-in-a-row.
+	private static final boolean[] IS_LINE = new boolean[512];
+	// Lookup table giving, at index (9 * mask + n), the index of the nth set bit of each 3x3 mask.
+	private static final byte[] SELECT_SQUARE = new byte[512 * 9];
+	/*
+	 * Each entry of the undo stack packs one move into an int: the move (7 bits), the previous move
+	 * plus one (7 bits), the number of playable squares (7 bits) and flags for the game over state
+	 * and for whether the move finished its small board.
+	 */
+	private static final int UNDO_MOVE_MASK = 0x7F;
+	private static final int UNDO_PREVIOUS_MOVE_SHIFT = 7;
+	private static final int UNDO_PLAYABLE_SQUARES_SHIFT = 14;
+	private static final int UNDO_GAME_OVER = 1 << 21;
+	private static final int UNDO_DRAW = 1 << 22;
+	private static final int UNDO_FINISHED_BOARD = 1 << 23;
+	// Zobrist keys for an X (at index move) or an O (at index 81 + move) on each square.
+	private static final long[] PIECE_KEYS = new long[2 * 81];
+	// Zobrist keys for each small board being won by X, won by O or drawn, in that order.
+	private static final long[] FINISHED_BOARD_KEYS = new long[3 * 9];
+	// Zobrist keys for the board the next player is sent to, at index (forced board + 1).
+	private static final long[] FORCED_BOARD_KEYS = new long[10];
+	// Zobrist key for X having made the last move, since either piece can start a game.
+	private static final long X_MOVED_LAST_KEY;
+
+	static {
+		for (int mask = 0; mask < 512; mask++) {
+			for (int line : LINES) {
+				if ((mask & line) == line) {
+					IS_LINE[mask] = true;
+				}
+			}
+			int n = 0;
+			for (int square = 0; square < 9; square++) {
+				if ((mask & (1 << square)) != 0) {
+					SELECT_SQUARE[9 * mask + n] = (byte) square;
+					n++;
+				}
+			}
+		}
+		// A fixed seed keeps the hashes the same from run to run.
+		Random random = new Random(81);
+		for (int i = 0; i < PIECE_KEYS.length; i++) {
+			PIECE_KEYS[i] = random.nextLong();
+		}
+		for (int i = 0; i < FINISHED_BOARD_KEYS.length; i++) {
+			FINISHED_BOARD_KEYS[i] = random.nextLong();
+		}
+		for (int i = 0; i < FORCED_BOARD_KEYS.length; i++) {
+			FORCED_BOARD_KEYS[i] = random.nextLong();
+		}
+		X_MOVED_LAST_KEY = random.nextLong();
+	}
+
+	private GameSetting _gameSetting;
+	private int _numBoards;
+	private int[] _xMasks;
+	private int[] _oMasks;
+	private int _boardsWonX;
+	private int _boardsWonO;
+	private int _boardsDrawn;
+	private int _previousMove;
+	private boolean _isGameOver;
+	private boolean _isDraw;
+	private int _numPlayableSquares;
+	private long _hash;
+	private int[] _undoStack;
+	private int _numMovesMade;
+
+	/**
+	 * This constructor makes an empty board for the given game setting.
+	 */
+	public SimulationBoard(GameSetting gameSetting) {
+		_gameSetting = gameSetting;
+		_numBoards = gameSetting == GameSetting.ULTIMATE ? 9 : 1;
+		_xMasks = new int[_numBoards];
+		_oMasks = new int[_numBoards];
+		_previousMove = -1;
+		_numPlayableSquares = 9 * _numBoards;
+		// A game can never be longer than the number of squares.
+		_undoStack = new int[9 * _numBoards];
+		_numMovesMade = 0;
+	}
+
+	/**
+	 * This constructor sets up a position from the piece on each square (null if it is empty), the
+	 * piece which won each small board (NEITHER if it was drawn and null if it is still being
+	 * played) and the previous move, all as [x][y]. The previous move is null before the first move,
+	 * and boardsWon is ignored in the Basic game. Board.toSimulationBoard() uses it to copy a real
+	 * (or dummy) Board, but it lets a position be set up without one.
+	 */
+	public SimulationBoard(GameSetting gameSetting, Piece[][] pieces, Piece[][] boardsWon, int[] previousMove) {
+		this(gameSetting);
+		int boardSize = gameSetting.getBoardSize();
+		for (int x = 0; x < boardSize; x++) {
+			for (int y = 0; y < boardSize; y++) {
+				Piece piece = pieces[x][y];
+				if (piece == Piece.X) {
+					_xMasks[SimulationBoard.boardOf(x, y)] |= 1 << SimulationBoard.squareOf(x, y);
+				} else if (piece == Piece.O) {
+					_oMasks[SimulationBoard.boardOf(x, y)] |= 1 << SimulationBoard.squareOf(x, y);
+				}
+			}
+		}
+
+		// Copies the finished boards. NEITHER marks a drawn board (see the Piece enum).
+		if (gameSetting == GameSetting.ULTIMATE) {
+			for (int x = 0; x < 3; x++) {
+				for (int y = 0; y < 3; y++) {
+					Piece piece = boardsWon[x][y];
+					if (piece == Piece.X) {
+						_boardsWonX |= 1 << (3 * y + x);
+					} else if (piece == Piece.O) {
+						_boardsWonO |= 1 << (3 * y + x);
+					} else if (piece == Piece.NEITHER) {
+						_boardsDrawn |= 1 << (3 * y + x);
+					}
+				}
+			}
+		}
+
+		if (previousMove != null) {
+			_previousMove = SimulationBoard.encodeMove(previousMove[0], previousMove[1]);
+		}
+		this.updateGameOver();
+
+		_numPlayableSquares = 0;
+		for (int i = 0; i < _numBoards; i++) {
+			_numPlayableSquares += Integer.bitCount(this.getEmptySquares(i));
+		}
+
+		// Builds the hash from scratch. After this it is only ever updated.
+		for (int move = 0; move < 9 * _numBoards; move++) {
+			if ((_xMasks[move / 9] & (1 << (move % 9))) != 0) {
+				_hash ^= PIECE_KEYS[move];
+			} else if ((_oMasks[move / 9] & (1 << (move % 9))) != 0) {
+				_hash ^= PIECE_KEYS[81 + move];
+			}
+		}
+		for (int i = 0; i < 9; i++) {
+			_hash ^= this.getFinishedBoardKey(i);
+		}
+	}
+
+	/**
+	 * This method overwrites this board with the position of another simulation board (including its
+	 * undo stack) without allocating anything.
+	 */
+	public void copyBoard(SimulationBoard board) {
+		System.arraycopy(board._xMasks, 0, _xMasks, 0, _numBoards);
+		System.arraycopy(board._oMasks, 0, _oMasks, 0, _numBoards);
+		_boardsWonX = board._boardsWonX;
+		_boardsWonO = board._boardsWonO;
+		_boardsDrawn = board._boardsDrawn;
+		_previousMove = board._previousMove;
+		_isGameOver = board._isGameOver;
+		_isDraw = board._isDraw;
+		_numPlayableSquares = board._numPlayableSquares;
+		_hash = board._hash;
+		System.arraycopy(board._undoStack, 0, _undoStack, 0, board._numMovesMade);
+		_numMovesMade = board._numMovesMade;
+	}
+
+	/**
+	 * This method returns an arraylist of the board's legal moves as x,y pairs, in the same order as
+	 * Board.getLegalMoves().
+	 */
+	public ArrayList<int[]> getLegalMoves() {
+		ArrayList<int[]> legalMoves = new ArrayList<int[]>();
+		int boardSize = _gameSetting.getBoardSize();
+		int forcedBoard = this.getForcedBoard();
+
+		for (int y = 0; y < boardSize; y++) {
+			for (int x = 0; x < boardSize; x++) {
+				int board = SimulationBoard.boardOf(x, y);
+				// Squares in finished boards are never legal, just like Square.isFilled().
+				if ((forcedBoard == -1 || forcedBoard == board) && !this.isBoardFinished(board)
+						&& ((_xMasks[board] | _oMasks[board]) & (1 << SimulationBoard.squareOf(x, y))) == 0) {
+					legalMoves.add(new int[] { x, y });
+				}
+			}
+		}
+		return legalMoves;
+	}
+
+	/**
+	 * This method returns the number of legal moves without building a list of them.
+	 */
+	public int getNumLegalMoves() {
+		int forcedBoard = this.getForcedBoard();
+		if (forcedBoard != -1) {
+			return Integer.bitCount(this.getEmptySquares(forcedBoard));
+		}
+		return _numPlayableSquares;
+	}
+
+	/**
+	 * This method picks a uniformly random legal move in constant time. If the player is sent to a
+	 * small board, it picks a random empty square of that board straight from its mask. Otherwise
+	 * every playable square on the board is legal, and their count is kept up to date by makeMove().
+	 */
+	public int getRandomLegalMove(Random random) {
+		int forcedBoard = this.getForcedBoard();
+		if (forcedBoard != -1) {
+			int emptySquares = this.getEmptySquares(forcedBoard);
+			return 9 * forcedBoard + SELECT_SQUARE[9 * emptySquares + random.nextInt(Integer.bitCount(emptySquares))];
+		}
+		return this.getLegalMove(random.nextInt(_numPlayableSquares));
+	}
+
+	/**
+	 * This method returns the legal move with the given index (from 0 to getNumLegalMoves() - 1) as
+	 * an encoded move. Legal moves are ordered by small board and then by square.
+	 */
+	public int getLegalMove(int index) {
+		int forcedBoard = this.getForcedBoard();
+		for (int board = 0; board < _numBoards; board++) {
+			if (forcedBoard != -1 && board != forcedBoard) {
+				continue;
+			}
+			int emptySquares = this.getEmptySquares(board);
+			// Skips whole small boards until the one containing the move is reached.
+			if (index >= Integer.bitCount(emptySquares)) {
+				index -= Integer.bitCount(emptySquares);
+				continue;
+			}
+			return 9 * board + SELECT_SQUARE[9 * emptySquares + index];
+		}
+		return -1;
+	}
+
+	/**
+	 * This method returns a mask of the squares in a small board which are empty and playable. A
+	 * finished board has no playable squares.
+	 */
+	private int getEmptySquares(int board) {
+		if (this.isBoardFinished(board)) {
+			return 0;
+		}
+		return ~(_xMasks[board] | _oMasks[board]) & FULL_BOARD;
+	}
+
+	/**
+	 * This method returns the index of the small board the next player is sent to, or -1 if they
+	 * may play anywhere (first move, Basic game, or the board they would be sent to is finished).
+	 */
+	public int getForcedBoard() {
+		if (_gameSetting != GameSetting.ULTIMATE || _previousMove == -1) {
+			return -1;
+		}
+		// The square played inside its small board is the index of the board the opponent is sent to.
+		int forcedBoard = _previousMove % 9;
+		return this.isBoardFinished(forcedBoard) ? -1 : forcedBoard;
+	}
+
+	/**
+	 * This method places a piece on the board, marks any small board it finishes, and records it as
+	 * the previous move. It does the job of ComputerPlayer.playDummyBoard() for a dummy Board.
+	 */
+	public void makeMove(int[] move, Piece piece) {
+		this.makeMove(SimulationBoard.encodeMove(move[0], move[1]), piece);
+	}
+
+	/**
+	 * This method plays an encoded move. It is what the playouts use, since it needs no arrays.
+	 * Everything the move changes besides the square itself is pushed onto the undo stack first so
+	 * that undoMove() can take it back exactly.
+	 */
+	public void makeMove(int move, Piece piece) {
+		int board = move / 9;
+		int square = 1 << (move % 9);
+		int undo = move | (_previousMove + 1) << UNDO_PREVIOUS_MOVE_SHIFT
+				| _numPlayableSquares << UNDO_PLAYABLE_SQUARES_SHIFT | (_isGameOver ? UNDO_GAME_OVER : 0)
+				| (_isDraw ? UNDO_DRAW : 0);
+		if (piece == Piece.X) {
+			_xMasks[board] |= square;
+			_hash ^= PIECE_KEYS[move];
+		} else {
+			_oMasks[board] |= square;
+			_hash ^= PIECE_KEYS[81 + move];
+		}
+		_numPlayableSquares--;
+
+		/*
+		 * Only the small board that was played in can have been finished by this move, and the big
+		 * board only needs to be looked at again if that small board was finished.
+		 */
+		if (_gameSetting == GameSetting.ULTIMATE) {
+			if (!this.isBoardFinished(board)) {
+				if (IS_LINE[piece == Piece.X ? _xMasks[board] : _oMasks[board]]) {
+					if (piece == Piece.X) {
+						_boardsWonX |= 1 << board;
+					} else {
+						_boardsWonO |= 1 << board;
+					}
+					// The rest of a won board can no longer be played in.
+					_numPlayableSquares -= Integer.bitCount(~(_xMasks[board] | _oMasks[board]) & FULL_BOARD);
+					undo |= UNDO_FINISHED_BOARD;
+					_hash ^= this.getFinishedBoardKey(board);
+					this.updateGameOver();
+				} else if ((_xMasks[board] | _oMasks[board]) == FULL_BOARD) {
+					_boardsDrawn |= 1 << board;
+					undo |= UNDO_FINISHED_BOARD;
+					_hash ^= this.getFinishedBoardKey(board);
+					this.updateGameOver();
+				}
+			}
+		} else {
+			this.updateGameOver();
+		}
+		_previousMove = move;
+		_undoStack[_numMovesMade] = undo;
+		_numMovesMade++;
+	}
+
+	/**
+	 * This method takes back the last move made with makeMove(). Afterwards the board is exactly as
+	 * it was before that move, including finished boards and which board the next player is sent to.
+	 */
+	public void undoMove() {
+		_numMovesMade--;
+		int undo = _undoStack[_numMovesMade];
+		int move = undo & UNDO_MOVE_MASK;
+		int board = move / 9;
+		// Since exclusive or is its own inverse, applying the keys again takes them back out.
+		_hash ^= (_xMasks[board] & (1 << (move % 9))) != 0 ? PIECE_KEYS[move] : PIECE_KEYS[81 + move];
+		_xMasks[board] &= ~(1 << (move % 9));
+		_oMasks[board] &= ~(1 << (move % 9));
+		// Only the board that was played in can have been finished by the move.
+		if ((undo & UNDO_FINISHED_BOARD) != 0) {
+			_hash ^= this.getFinishedBoardKey(board);
+			_boardsWonX &= ~(1 << board);
+			_boardsWonO &= ~(1 << board);
+			_boardsDrawn &= ~(1 << board);
+		}
+		_previousMove = ((undo >>> UNDO_PREVIOUS_MOVE_SHIFT) & UNDO_MOVE_MASK) - 1;
+		_numPlayableSquares = (undo >>> UNDO_PLAYABLE_SQUARES_SHIFT) & UNDO_MOVE_MASK;
+		_isGameOver = (undo & UNDO_GAME_OVER) != 0;
+		_isDraw = (undo & UNDO_DRAW) != 0;
+	}
+
+	/**
+	 * This method returns the last move played on the board (encoded as in the class comment), or
+	 * -1 if no move has been played yet.
+	 */
+	public int getPreviousMove() {
+		return _previousMove;
+	}
+
+	/**
+	 * This method returns how many moves have been made (and not undone) since the board was
+	 * created, i.e. how many times undoMove() can be called.
+	 */
+	public int getNumMovesMade() {
+		return _numMovesMade;
+	}
+
+	/**
+	 * This method returns how many empty squares are left on the small boards that are still being
+	 * played (or on the whole board in the Basic game).
+	 */
+	public int getNumPlayableSquares() {
+		return _numPlayableSquares;
+	}
+
+	/**
+	 * This method returns the state of the game: NOWIN while it is ongoing, WIN if the last piece
+	 * played won it, or DRAW. Unlike Board.checkWin() it allocates nothing, and since the result is
+	 * kept up to date by makeMove(), it is just a lookup.
+	 */
+	public GameState getGameState() {
+		if (!_isGameOver) {
+			return GameState.NOWIN;
+		}
+		return _isDraw ? GameState.DRAW : GameState.WIN;
+	}
+
+	/**
+	 * This method recalculates whether the game is over from the big board (or, in the Basic game,
+	 * the only board) via the line lookup table.
+	 */
+	private void updateGameOver() {
+		int xMask;
+		int oMask;
+		int filledMask;
+		// The Ultimate game is just a three-in-a-row of small boards.
+		if (_gameSetting == GameSetting.ULTIMATE) {
+			xMask = _boardsWonX;
+			oMask = _boardsWonO;
+			filledMask = _boardsWonX | _boardsWonO | _boardsDrawn;
+		} else {
+			xMask = _xMasks[0];
+			oMask = _oMasks[0];
+			filledMask = xMask | oMask;
+		}
+
+		_isGameOver = IS_LINE[xMask] || IS_LINE[oMask] || filledMask == FULL_BOARD;
+		_isDraw = _isGameOver && !IS_LINE[xMask] && !IS_LINE[oMask];
+	}
+
+	/**
+	 * This method returns the Zobrist hash of the position: the pieces, the finished small boards
+	 * the board the next player is sent to and which piece moved last. The last is needed because
+	 * the same pieces can be reached with either piece to move, depending on which started.
+	 */
+	public long getHash() {
+		long hash = _hash ^ FORCED_BOARD_KEYS[this.getForcedBoard() + 1];
+		if (_previousMove != -1 && (_xMasks[_previousMove / 9] & (1 << (_previousMove % 9))) != 0) {
+			hash ^= X_MOVED_LAST_KEY;
+		}
+		return hash;
+	}
+
+	/**
+	 * This method returns what getHash() would return after the given legal move, without making
+	 * it. This lets the hashes of all a position's children be found cheaply.
+	 */
+	public long getHashAfterMove(int move, Piece piece) {
+		int board = move / 9;
+		int square = 1 << (move % 9);
+		long hash = _hash ^ (piece == Piece.X ? PIECE_KEYS[move] ^ X_MOVED_LAST_KEY : PIECE_KEYS[81 + move]);
+		if (_gameSetting != GameSetting.ULTIMATE) {
+			return hash ^ FORCED_BOARD_KEYS[0];
+		}
+
+		// Works out whether the move finishes its small board, just as makeMove() does.
+		int finishedBoards = _boardsWonX | _boardsWonO | _boardsDrawn;
+		if (IS_LINE[(piece == Piece.X ? _xMasks[board] : _oMasks[board]) | square]) {
+			hash ^= FINISHED_BOARD_KEYS[(piece == Piece.X ? 0 : 9) + board];
+			finishedBoards |= 1 << board;
+		} else if ((_xMasks[board] | _oMasks[board] | square) == FULL_BOARD) {
+			hash ^= FINISHED_BOARD_KEYS[18 + board];
+			finishedBoards |= 1 << board;
+		}
+		int forcedBoard = (finishedBoards & (1 << (move % 9))) != 0 ? -1 : move % 9;
+		return hash ^ FORCED_BOARD_KEYS[forcedBoard + 1];
+	}
+
+	/**
+	 * This method returns the Zobrist key for the state of a small board: the key for it being won
+	 * by X, won by O or drawn, or 0 if it is still being played.
+	 */
+	private long getFinishedBoardKey(int board) {
+		if ((_boardsWonX & (1 << board)) != 0) {
+			return FINISHED_BOARD_KEYS[board];
+		} else if ((_boardsWonO & (1 << board)) != 0) {
+			return FINISHED_BOARD_KEYS[9 + board];
+		} else if ((_boardsDrawn & (1 << board)) != 0) {
+			return FINISHED_BOARD_KEYS[18 + board];
+		}
+		return 0;
+	}
+
+	/**
+	 * This method checks whether the small board at the given index has been won or drawn.
+	 */
+	public boolean isBoardFinished(int board) {
+		return ((_boardsWonX | _boardsWonO | _boardsDrawn) & (1 << board)) != 0;
+	}
+
+	/**
+	 * This method checks whether the small board containing square x,y has been won (not drawn).
+	 */
+	public boolean isSmallBoardWon(int x, int y) {
+		return ((_boardsWonX | _boardsWonO) & (1 << SimulationBoard.boardOf(x, y))) != 0;
+	}
+
+	/**
+	 * This static method converts x,y coordinates into the index of the small board containing them.
+	 */
+	public static int boardOf(int x, int y) {
+		return 3 * (y / 3) + x / 3;
+	}
+
+	/**
+	 * This static method converts x,y coordinates into the index of the square inside its small board.
+	 */
+	public static int squareOf(int x, int y) {
+		return 3 * (y % 3) + x % 3;
+	}
+
+	/**
+	 * This static method encodes x,y coordinates as a single move int (see the class comment).
+	 */
+	public static int encodeMove(int x, int y) {
+		return 9 * SimulationBoard.boardOf(x, y) + SimulationBoard.squareOf(x, y);
+	}
+
+	/**
+	 * This static method returns the x coordinate of an encoded move.
+	 */
+	public static int decodeX(int move) {
+		return 3 * (move / 9 % 3) + move % 3;
+	}
+
+	/**
+	 * This static method returns the y coordinate of an encoded move.
+	 */
+	public static int decodeY(int move) {
+		return 3 * (move / 27) + move % 9 / 3;
+	}
+}
@@ -1,6 +1,5 @@
 package TicTacToe;
 
-import TicTacToe.Square.Piece;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.layout.StackPane;
@@ -17,19 +16,6 @@ public class Square {
 	private Piece _piece;
 	private boolean _parentBoardWon;
 
-	/**
-	 * This enum represents possible TicTacToe pieces. The third option, NEITHER, exists because
-	 * this enum is also used to encode which boards have been won in the Ultimate version of the
-	 * game. Since boards can be drawn (neither won nor lost), there must be a state for a completed
-	 * board won by neither player. This may seem a bit inelegant but the alternatives would be to
-	 * either use the Square class (which would include a bunch of useless visual stuff for a purely
-	 * logical data structure) or to create a new, very similar enum just for won boards. Both
-	 * alternatives would have added superfluous code.
-	 */
-	public enum Piece {
-		X, O, NEITHER
-	}
-
 	/**
 	 * The constructor sets up the visual square and some flags. _parentBoardWon allows a square to
 	 * know whether it is part of a board that has already been completed (in the Ultimate game).
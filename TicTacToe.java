@@ -3,7 +3,6 @@ package TicTacToe;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
-import TicTacToe.Square.Piece;
 import javafx.event.EventHandler;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
@@ -48,13 +47,6 @@ public class TicTacToe {
 		HUMANVHUMAN, HUMANVCOMPUTER, COMPUTERVCOMPUTER
 	}
 
-	/**
-	 * This enum encodes which game type the user chose.
-	 */
-	public enum GameSetting {
-		BASIC, ULTIMATE
-	}
-
 	/**
 	 * This constructor sets a number of flag variables to their initial states and sets up the top
 	 * level graphical game pane.
@@ -269,6 +261,8 @@ public class TicTacToe {
 		case HUMANVCOMPUTER:
 			pieceSetter = new HumanPlayer(_gameSetting, playerOneName);
 			_players = new Player[] { pieceSetter, new ComputerPlayer(pieceSetter.getPiece(), _gameSetting) };
+			// The computer can think on the human's time.
+			((ComputerPlayer) (_players[1])).setPondering(true);
 			break;
 
 		case COMPUTERVCOMPUTER:
@@ -287,7 +281,7 @@ public class TicTacToe {
 		 */
 		if (_playerToGo.isComputer()) {
 			this.updateStatusBar(true);
-			((ComputerPlayer) (_playerToGo)).animateMove(this);
+			((ComputerPlayer) (_playerToGo)).startMove(this);
 		} else {
 			this.updateStatusBar(false);
 		}
@@ -312,7 +306,7 @@ public class TicTacToe {
 			if (_playerToGo.isComputer()) {
 				if (!_gameOver) {
 					this.updateStatusBar(true);
-					((ComputerPlayer) (_playerToGo)).animateMove(this);
+					((ComputerPlayer) (_playerToGo)).startMove(this);
 				}
 
 				// If the player is not a computer, highlight legal moves and just chill out until
@@ -350,6 +344,8 @@ public class TicTacToe {
 	private void gameOver(boolean draw, Board board) {
 		_statusBar.setText("Congratulations!");
 		_gameOver = true;
+		// Stops a computer pondering a game that is over.
+		this.stopComputerPlayers();
 
 		// Makes three labels for the game over message.
 		Label gameOverLabel = new Label();
@@ -447,6 +443,7 @@ public class TicTacToe {
 	 * reappear again.
 	 */
 	public void restart() {
+		this.stopComputerPlayers();
 		if (_gameOver) {
 			_gamePane.getChildren().clear();
 			_gameOver = false;
@@ -456,6 +453,21 @@ public class TicTacToe {
 		}
 	}
 
+	/**
+	 * This method stops any computer players in the game, cancelling their search if they are
+	 * thinking. It is called when the game is restarted or the window is closed.
+	 */
+	public void stopComputerPlayers() {
+		if (_players == null) {
+			return;
+		}
+		for (Player player : _players) {
+			if (player.isComputer()) {
+				((ComputerPlayer) player).stop();
+			}
+		}
+	}
+
 	/**
 	 * This method adds a ClickHandler event handler to every square on the board.
 	 */
@@ -491,19 +503,6 @@ public class TicTacToe {
 		return _gameSetting;
 	}
 
-	/**
-	 * This static method returns the opposite of a piece.
-	 */
-	public static Piece flipPiece(Piece piece) {
-		if (piece == Piece.X) {
-			return Piece.O;
-		} else if (piece == Piece.O) {
-			return Piece.X;
-		} else {
-			return null;
-		}
-	}
-
 	/**
 	 * This method gives the TicTacToe class knowledge of the status bar so that it can set its
 	 * label text.
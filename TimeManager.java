@@ -0,0 +1,118 @@
+package TicTacToe;
+
+/**
+ * This class shares out a game clock between an engine's moves, like a chess clock: the engine has
+ * a total time for the game, and may get an increment added back after each move. Each move gets
+ * the remaining time divided by the number of moves the engine expects still to make, which is
+ * worked out from the number of empty squares left in play, plus the increment. A move with only a
+ * few legal replies gets less than that, and a forced move gets almost nothing.
+ *
+ * The engine may also go on searching past a move's budget, up to a limit, if its statistics have
+ * not settled (see isUnsettled()), since that is where more time is most likely to change the move.
+ *
+ * The times are all in nanoseconds.
+ */
+public class TimeManager {
+	// The fewest moves the engine expects still to make, so that it never spends most of its clock
+	// on one move when the game could still go on.
+	private static final int MIN_MOVES_TO_GO = 8;
+	// The share of the empty squares still in play which the engine expects to fill itself before
+	// the game ends. Games often end before the board fills up, and the squares are shared between
+	// the players.
+	private static final double MOVES_TO_GO_PER_SQUARE = 0.3;
+	// The number of legal moves from which a move gets its full budget.
+	private static final int FULL_BUDGET_LEGAL_MOVES = 9;
+	// How many times its budget a move may take if the search has not settled.
+	private static final double MAX_EXTENSION = 2.5;
+	// The largest share of the remaining time any one move may take.
+	private static final double MAX_MOVE_SHARE = 0.25;
+	// The least time spent on a move, even a forced one, so that the engine still has statistics
+	// to report (and ponders from the right position).
+	private static final long MIN_MOVE_TIME = 10000000;
+
+	private long _remainingTime;
+	private long _increment;
+	private boolean _hasRunOut;
+
+	/**
+	 * This constructor sets up a clock with the given time for the whole game and the increment
+	 * added after each move.
+	 */
+	public TimeManager(long gameTime, long increment) {
+		_remainingTime = gameTime;
+		_increment = increment;
+	}
+
+	/**
+	 * This method returns how long the engine should normally search for its move in the given
+	 * position.
+	 */
+	public long getMoveBudget(SimulationBoard position) {
+		int numLegalMoves = position.getNumLegalMoves();
+		if (numLegalMoves <= 1) {
+			return MIN_MOVE_TIME;
+		}
+		double movesToGo = Math.max(MIN_MOVES_TO_GO, position.getNumPlayableSquares() * MOVES_TO_GO_PER_SQUARE);
+		double budget = _remainingTime / movesToGo + _increment;
+		// The fewer moves there are to choose from, the sooner the search can tell them apart.
+		budget *= Math.min(1, 0.5 + 0.5 * (numLegalMoves - 1) / (FULL_BUDGET_LEGAL_MOVES - 1));
+		return this.limitMoveTime((long) budget);
+	}
+
+	/**
+	 * This method returns the longest the engine may search for its move in the given position if
+	 * it has not settled on a move by the end of the normal budget.
+	 */
+	public long getMaxMoveBudget(SimulationBoard position) {
+		return this.limitMoveTime((long) (this.getMoveBudget(position) * MAX_EXTENSION));
+	}
+
+	/**
+	 * This method takes the time a move took off the clock and adds the increment. If the move took
+	 * longer than was left on the clock, the clock has run out (see hasRunOut()), even if the
+	 * increment brings it back above zero.
+	 */
+	public void useTime(long time) {
+		if (time > _remainingTime) {
+			_hasRunOut = true;
+		}
+		_remainingTime = _remainingTime - time + _increment;
+	}
+
+	/**
+	 * This method returns whether any move has taken longer than was left on the clock, which loses
+	 * the game on time.
+	 */
+	public boolean hasRunOut() {
+		return _hasRunOut;
+	}
+
+	/**
+	 * This method returns the time left on the clock.
+	 */
+	public long getRemainingTime() {
+		return _remainingTime;
+	}
+
+	/**
+	 * This static method returns whether the search has not yet settled on the best of the moves,
+	 * given the playouts of each move (indexed by encoded move) and the move with the best win rate:
+	 * that move has not been played out more than any other, so the search has not yet confirmed it.
+	 */
+	public static boolean isUnsettled(int[] playouts, int best) {
+		for (int move = 0; move < playouts.length; move++) {
+			if (move != best && playouts[move] >= playouts[best]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * This method keeps a move's time between the minimum and its largest share of the clock (plus
+	 * the increment, which it gets back).
+	 */
+	private long limitMoveTime(long time) {
+		return Math.max(MIN_MOVE_TIME, Math.min(time, (long) (_remainingTime * MAX_MOVE_SHARE) + _increment));
+	}
+}
@@ -0,0 +1,467 @@
+package TicTacToe;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class plays two engines against each other from the command line, many games at once and
+ * without the JavaFX game, to measure whether a change actually makes the engine stronger. The two
+ * sides (A and B) can each be given their own search settings (see EngineSettings). Side A starts
+ * every other game and plays X in every other pair of games, so that neither side gets an advantage
+ * from starting or from its piece.
+ *
+ * The tournament stops early once a sequential probability ratio test (SPRT) can tell whether A is
+ * stronger than B by at least elo1 or by at most elo0, with error rates alpha and beta. The test uses
+ * the usual normal approximation: after each game it works out the log likelihood ratio of the two
+ * hypotheses from the mean and variance of A's score, and stops when it leaves the bounds
+ * ln(beta / (1 - alpha)) and ln((1 - beta) / alpha). Otherwise the tournament ends after the given
+ * number of games. Either way it reports A's wins, draws and losses, the Elo difference with a 95%
+ * confidence interval, how many playouts each side managed per second of search, and how often each
+ * side's transposition table lookups found a position.
+ *
+ * Usage: java TicTacToe.Tournament [-option value]... where the options are games, concurrency,
+ * setting (BASIC or ULTIMATE), elo0, elo1, alpha and beta, and the engine settings time (per move, in
+ * milliseconds), clock and increment (per game and added after each move, in milliseconds, instead
+ * of a time per move; a side whose clock runs out loses), threads, mode (a SearchMode), batch, nodes,
+ * transpositions (true or false) and solver (the number of playable squares from which the endgame
+ * solver is used, or 0 for never). An
+ * engine setting applies to both sides, or to one side if it is prefixed with "a-" or "b-", e.g.
+ * "-a-transpositions false".
+ */
+public class Tournament {
+	// How often (in games) the tournament prints its progress.
+	private static final int REPORT_INTERVAL = 100;
+
+	private GameSetting _gameSetting;
+	private EngineSettings[] _engineSettings;
+	private int _maxGames;
+	private int _concurrency;
+	private double _elo0;
+	private double _elo1;
+	private double _alpha;
+	private double _beta;
+	private AtomicInteger _nextGame;
+	private AtomicBoolean _stopped;
+	private int _wins;
+	private int _draws;
+	private int _losses;
+	private long[] _numPlayouts;
+	private long[] _searchTime;
+	private long[] _numTranspositionLookups;
+	private long[] _numTranspositionHits;
+	private long _startTime;
+
+	/**
+	 * This is the entry point of the command line runner. It reads the options (see the class comment)
+	 * and plays the tournament.
+	 */
+	public static void main(String[] args) {
+		Tournament tournament = new Tournament();
+		try {
+			if (args.length % 2 != 0) {
+				throw new IllegalArgumentException("Every option needs a value");
+			}
+			for (int i = 0; i < args.length; i += 2) {
+				tournament.setOption(args[i], args[i + 1]);
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java TicTacToe.Tournament [-option value]... (see the Tournament class)");
+			System.exit(1);
+		}
+		tournament.run();
+	}
+
+	/**
+	 * This constructor sets up a tournament of up to 10000 Ultimate games between two engines with the
+	 * same settings, one game per processor at a time, testing for a difference of 0 against 10 Elo
+	 * with 5% error rates.
+	 */
+	public Tournament() {
+		_gameSetting = GameSetting.ULTIMATE;
+		_engineSettings = new EngineSettings[] { new EngineSettings(), new EngineSettings() };
+		_maxGames = 10000;
+		_concurrency = Constants.COMPUTER_THREADS;
+		_elo0 = 0;
+		_elo1 = 10;
+		_alpha = 0.05;
+		_beta = 0.05;
+	}
+
+	/**
+	 * This method sets one of the tournament's options from the command line. The name may start
+	 * with a dash.
+	 */
+	public void setOption(String name, String value) {
+		if (name.startsWith("-")) {
+			name = name.substring(1);
+		}
+		try {
+			switch (name) {
+			case "games":
+				_maxGames = Integer.parseInt(value);
+				break;
+			case "concurrency":
+				_concurrency = Integer.parseInt(value);
+				break;
+			case "setting":
+				_gameSetting = GameSetting.valueOf(value.toUpperCase());
+				break;
+			case "elo0":
+				_elo0 = Double.parseDouble(value);
+				break;
+			case "elo1":
+				_elo1 = Double.parseDouble(value);
+				break;
+			case "alpha":
+				_alpha = Double.parseDouble(value);
+				break;
+			case "beta":
+				_beta = Double.parseDouble(value);
+				break;
+			default:
+				if (name.startsWith("a-")) {
+					_engineSettings[0].setOption(name.substring(2), value);
+				} else if (name.startsWith("b-")) {
+					_engineSettings[1].setOption(name.substring(2), value);
+				} else {
+					_engineSettings[0].setOption(name, value);
+					_engineSettings[1].setOption(name, value);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad value for " + name + ": " + value);
+		}
+	}
+
+	/**
+	 * This method plays the tournament: each of the concurrent games runs on its own thread, which
+	 * starts the next game when its game ends, until the games run out or the SPRT is decided.
+	 */
+	public void run() {
+		_nextGame = new AtomicInteger(0);
+		_stopped = new AtomicBoolean(false);
+		_wins = 0;
+		_draws = 0;
+		_losses = 0;
+		_numPlayouts = new long[2];
+		_searchTime = new long[2];
+		_numTranspositionLookups = new long[2];
+		_numTranspositionHits = new long[2];
+		_startTime = System.nanoTime();
+
+		ExecutorService executor = Executors.newFixedThreadPool(_concurrency);
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int i = 0; i < _concurrency; i++) {
+			tasks.add(Executors.callable(() -> {
+				int gameNumber = _nextGame.getAndIncrement();
+				while (!_stopped.get() && gameNumber < _maxGames) {
+					this.recordResult(this.playGame(gameNumber));
+					gameNumber = _nextGame.getAndIncrement();
+				}
+			}));
+		}
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("The tournament failed", e);
+		} finally {
+			executor.shutdown();
+		}
+		System.out.println(this.getReport());
+		double llr = this.getLogLikelihoodRatio();
+		if (llr >= Math.log((1 - _beta) / _alpha)) {
+			System.out.println("SPRT: H1 accepted (A is at least " + _elo1 + " Elo stronger)");
+		} else if (llr <= Math.log(_beta / (1 - _alpha))) {
+			System.out.println("SPRT: H0 accepted (A is at most " + _elo0 + " Elo stronger)");
+		} else {
+			System.out.println("SPRT: inconclusive");
+		}
+	}
+
+	/**
+	 * This method plays one game between the two sides and returns its result for side A: WIN, LOSE
+	 * or DRAW. Each game has its own engines, so the games share nothing.
+	 */
+	private GameState playGame(int gameNumber) {
+		Piece pieceA = (gameNumber / 2) % 2 == 0 ? Piece.X : Piece.O;
+		Engine[] engines = new Engine[] { _engineSettings[0].makeEngine(_gameSetting, pieceA),
+				_engineSettings[1].makeEngine(_gameSetting, pieceA.flip()) };
+		int side = gameNumber % 2;
+		TimeManager[] timeManagers = new TimeManager[] { _engineSettings[0].makeTimeManager(),
+				_engineSettings[1].makeTimeManager() };
+		SimulationBoard position = new SimulationBoard(_gameSetting);
+		long[] numPlayouts = new long[2];
+		long[] searchTime = new long[2];
+		long[] numTranspositionLookups = new long[2];
+		long[] numTranspositionHits = new long[2];
+		boolean lostOnTime = false;
+		while (position.getGameState() == GameState.NOWIN && !lostOnTime) {
+			SearchResult result;
+			if (timeManagers[side] != null) {
+				result = engines[side].search(position, timeManagers[side], new AtomicBoolean(false));
+				lostOnTime = timeManagers[side].hasRunOut();
+			} else {
+				result = engines[side].search(position, _engineSettings[side].getTimePerMove());
+			}
+			if (result == null) {
+				throw new IllegalStateException("The engine did not choose a move");
+			}
+			numPlayouts[side] += result.getNumNewPlayouts();
+			searchTime[side] += result.getSearchTime();
+			numTranspositionLookups[side] += result.getNumTranspositionLookups();
+			numTranspositionHits[side] += result.getNumTranspositionHits();
+			position.makeMove(result.getMove(), engines[side].getPiece());
+			side = 1 - side;
+		}
+		for (Engine engine : engines) {
+			engine.shutdown();
+		}
+		synchronized (this) {
+			for (int i = 0; i < 2; i++) {
+				_numPlayouts[i] += numPlayouts[i];
+				_searchTime[i] += searchTime[i];
+				_numTranspositionLookups[i] += numTranspositionLookups[i];
+				_numTranspositionHits[i] += numTranspositionHits[i];
+			}
+		}
+
+		if (lostOnTime) {
+			// The side that made the last move ran out of time doing so.
+			return side == 1 ? GameState.LOSE : GameState.WIN;
+		}
+		if (position.getGameState() == GameState.DRAW) {
+			return GameState.DRAW;
+		}
+		// The side that made the last move won the game.
+		return side == 1 ? GameState.WIN : GameState.LOSE;
+	}
+
+	/**
+	 * This method adds a game's result to the totals, prints the progress every so often, and stops
+	 * the tournament once the SPRT is decided.
+	 */
+	private synchronized void recordResult(GameState result) {
+		if (result == GameState.WIN) {
+			_wins++;
+		} else if (result == GameState.LOSE) {
+			_losses++;
+		} else {
+			_draws++;
+		}
+		if (this.getNumGames() % REPORT_INTERVAL == 0) {
+			System.out.println(this.getReport());
+		}
+		double llr = this.getLogLikelihoodRatio();
+		if (llr >= Math.log((1 - _beta) / _alpha) || llr <= Math.log(_beta / (1 - _alpha))) {
+			_stopped.set(true);
+		}
+	}
+
+	/**
+	 * This method returns a line summarising the tournament so far.
+	 */
+	private synchronized String getReport() {
+		double[] eloInterval = this.getEloInterval();
+		double wallTime = (System.nanoTime() - _startTime) / 1e9;
+		return String.format("Games %d: +%d =%d -%d, Elo %.1f [%.1f, %.1f], LLR %.2f [%.2f, %.2f], "
+				+ "playouts/s A %.0f B %.0f, total %.0f, TT hits A %.1f%% B %.1f%%",
+				this.getNumGames(), _wins, _draws, _losses, this.getEloDifference(), eloInterval[0],
+				eloInterval[1], this.getLogLikelihoodRatio(), Math.log(_beta / (1 - _alpha)),
+				Math.log((1 - _beta) / _alpha), _numPlayouts[0] / Math.max(1e-9, _searchTime[0] / 1e9),
+				_numPlayouts[1] / Math.max(1e-9, _searchTime[1] / 1e9), (_numPlayouts[0] + _numPlayouts[1])
+						/ wallTime, this.getTranspositionHitRate(0) * 100, this.getTranspositionHitRate(1) * 100);
+	}
+
+	/**
+	 * This method returns the share of a side's transposition table lookups which found the
+	 * position, over all its moves so far, or 0 if it has made none (e.g. with transpositions off).
+	 */
+	private synchronized double getTranspositionHitRate(int side) {
+		if (_numTranspositionLookups[side] == 0) {
+			return 0;
+		}
+		return (double) _numTranspositionHits[side] / _numTranspositionLookups[side];
+	}
+
+	/**
+	 * This method returns how many games have been played so far.
+	 */
+	public synchronized int getNumGames() {
+		return _wins + _draws + _losses;
+	}
+
+	/**
+	 * This method returns A's average score per game (1 for a win, 0.5 for a draw and 0 for a loss).
+	 */
+	private double getScore() {
+		return (_wins + 0.5 * _draws) / this.getNumGames();
+	}
+
+	/**
+	 * This method returns the variance of A's score in a single game.
+	 */
+	private double getScoreVariance() {
+		double score = this.getScore();
+		return (_wins * (1 - score) * (1 - score) + _draws * (0.5 - score) * (0.5 - score)
+				+ _losses * score * score) / this.getNumGames();
+	}
+
+	/**
+	 * This method returns the log likelihood ratio of A being elo1 stronger than B rather than elo0
+	 * stronger, or 0 until both a win and a loss or draw have been seen.
+	 */
+	public synchronized double getLogLikelihoodRatio() {
+		double variance = this.getScoreVariance();
+		if (this.getNumGames() == 0 || variance == 0) {
+			return 0;
+		}
+		double score0 = Tournament.eloToScore(_elo0);
+		double score1 = Tournament.eloToScore(_elo1);
+		return this.getNumGames() * (score1 - score0) * (2 * this.getScore() - score0 - score1) / (2 * variance);
+	}
+
+	/**
+	 * This method returns how many Elo stronger A has been than B so far.
+	 */
+	public synchronized double getEloDifference() {
+		return Tournament.scoreToElo(this.getScore());
+	}
+
+	/**
+	 * This method returns the lower and upper ends of the 95% confidence interval of the Elo
+	 * difference.
+	 */
+	public synchronized double[] getEloInterval() {
+		double margin = 1.96 * Math.sqrt(this.getScoreVariance() / this.getNumGames());
+		return new double[] { Tournament.scoreToElo(this.getScore() - margin),
+				Tournament.scoreToElo(this.getScore() + margin) };
+	}
+
+	/**
+	 * This static method converts an average score into an Elo difference. A score of 0 or 1 gives an
+	 * infinite difference.
+	 */
+	private static double scoreToElo(double score) {
+		if (score <= 0) {
+			return Double.NEGATIVE_INFINITY;
+		} else if (score >= 1) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	/**
+	 * This static method converts an Elo difference into the average score it predicts.
+	 */
+	private static double eloToScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * This inner class holds the search settings for one side of the tournament, and makes engines
+	 * with them. By default an engine searches on one thread for 100 milliseconds per move, so that
+	 * one game can be played per processor.
+	 */
+	public static class EngineSettings {
+		private long _timePerMove;
+		private long _gameTime;
+		private long _increment;
+		private int _numThreads;
+		private Engine.SearchMode _searchMode;
+		private int _batchSize;
+		private int _nodeBudget;
+		private boolean _useTranspositions;
+		private int _solverThreshold;
+
+		/**
+		 * This constructor sets up the default settings.
+		 */
+		public EngineSettings() {
+			_timePerMove = 100000000;
+			_numThreads = 1;
+			_searchMode = Engine.SearchMode.ROOT_PARALLEL;
+			_batchSize = Constants.ROLLOUT_BATCH_SIZE;
+			_nodeBudget = Constants.COMPUTER_NODE_BUDGET;
+			_useTranspositions = true;
+			_solverThreshold = Constants.SOLVER_THRESHOLD;
+		}
+
+		/**
+		 * This method sets one of the settings from the command line (see the Tournament class).
+		 */
+		public void setOption(String name, String value) {
+			switch (name) {
+			case "time":
+				_timePerMove = Long.parseLong(value) * 1000000;
+				break;
+			case "clock":
+				_gameTime = Long.parseLong(value) * 1000000;
+				break;
+			case "increment":
+				_increment = Long.parseLong(value) * 1000000;
+				break;
+			case "threads":
+				_numThreads = Integer.parseInt(value);
+				break;
+			case "mode":
+				_searchMode = Engine.SearchMode.valueOf(value.toUpperCase());
+				break;
+			case "batch":
+				_batchSize = Integer.parseInt(value);
+				break;
+			case "nodes":
+				_nodeBudget = Integer.parseInt(value);
+				break;
+			case "transpositions":
+				_useTranspositions = Boolean.parseBoolean(value);
+				break;
+			case "solver":
+				_solverThreshold = Integer.parseInt(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + name);
+			}
+		}
+
+		/**
+		 * This method makes an engine with these settings.
+		 */
+		public Engine makeEngine(GameSetting gameSetting, Piece piece) {
+			Engine engine = new Engine(gameSetting, piece);
+			engine.setNumThreads(_numThreads);
+			engine.setSearchMode(_searchMode);
+			engine.setBatchSize(_batchSize);
+			engine.setNodeBudget(_nodeBudget);
+			engine.setUseTranspositions(_useTranspositions);
+			engine.setSolverThreshold(_solverThreshold);
+			return engine;
+		}
+
+		/**
+		 * This method makes a clock for one game with these settings, or returns null if the engine
+		 * has a fixed time per move instead.
+		 */
+		public TimeManager makeTimeManager() {
+			if (_gameTime == 0) {
+				return null;
+			}
+			return new TimeManager(_gameTime, _increment);
+		}
+
+		/**
+		 * This method returns how long the engine searches for each move, in nanoseconds.
+		 */
+		public long getTimePerMove() {
+			return _timePerMove;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package TicTacToe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a transposition table: a fixed size hash table from positions (by their Zobrist
+ * hash, see SimulationBoard.getHash()) to the statistics gathered for them. In Ultimate, different
+ * orders of the same moves often lead to the same position, and the game tree has a separate node
+ * for each of them. The table lets those nodes pool their playouts, so that the search knows about
+ * a position as soon as it has been played out from any of them.
+ *
+ * Each hash can go in one of two neighbouring slots. When both are taken by other positions, the
+ * one with fewer playouts is replaced, so the table never grows beyond the size it was made with.
+ * The statistics are packed in the same way as in MoveTree. Like the tree, the table can be shared
+ * by several threads without locking. Two threads replacing the same slot at once can occasionally
+ * credit a few playouts to the wrong position, which only makes the shared statistics slightly
+ * noisier.
+ *
+ * The table also counts how often it is looked up for a new position and how often it has an
+ * entry for it, so that the hit rate can be reported. A hit is a position whose statistics were
+ * shared from another node; the search still plays out below it, but starts off knowing what that
+ * node learnt.
+ */
+public class TranspositionTable {
+	private AtomicLongArray _hashes;
+	private AtomicLongArray _stats;
+	private int _mask;
+	private LongAdder _numLookups;
+	private LongAdder _numHits;
+
+	/**
+	 * This constructor makes an empty table. The size is rounded up to a power of two.
+	 */
+	public TranspositionTable(int size) {
+		int capacity = Math.max(2, Integer.highestOneBit(size - 1) << 1);
+		_hashes = new AtomicLongArray(capacity);
+		_stats = new AtomicLongArray(capacity);
+		_mask = capacity - 1;
+		_numLookups = new LongAdder();
+		_numHits = new LongAdder();
+	}
+
+	/**
+	 * This method returns the packed statistics stored for a position, or 0 (no wins and no
+	 * playouts) if the table has none. It counts towards the hit rate.
+	 */
+	public long lookup(long hash) {
+		_numLookups.increment();
+		long stats = this.peek(hash);
+		if (stats != 0) {
+			_numHits.increment();
+		}
+		return stats;
+	}
+
+	/**
+	 * This method does the same as lookup() without counting towards the hit rate. The search uses
+	 * it for positions it has looked up before.
+	 */
+	public long peek(long hash) {
+		int slot = this.findSlot(hash);
+		if (slot == -1) {
+			return 0;
+		}
+		return _stats.get(slot);
+	}
+
+	/**
+	 * This method adds the results of some playouts to the statistics of a position, making an entry
+	 * for it if there is none. The arguments are the same as for MoveTree.updateStats(). It returns
+	 * the position's statistics after the update.
+	 */
+	public long update(long hash, int winsChange, int numPlayouts) {
+		int slot = this.findSlot(hash);
+		if (slot == -1) {
+			// Replaces whichever of the two slots has been played out less.
+			slot = (int) hash & _mask;
+			if (MoveTree.unpackPlayouts(_stats.get(slot ^ 1)) < MoveTree.unpackPlayouts(_stats.get(slot))) {
+				slot ^= 1;
+			}
+			_stats.set(slot, 0);
+			_hashes.set(slot, hash);
+		}
+		return _stats.addAndGet(slot, MoveTree.packStats(winsChange, numPlayouts));
+	}
+
+	/**
+	 * This method returns the slot holding the given position, or -1 if it is in neither of the
+	 * slots it can go in.
+	 */
+	private int findSlot(long hash) {
+		int slot = (int) hash & _mask;
+		if (_hashes.get(slot) == hash) {
+			return slot;
+		} else if (_hashes.get(slot ^ 1) == hash) {
+			return slot ^ 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * This method returns how many times the table has been looked up since the counts were reset.
+	 */
+	public long getNumLookups() {
+		return _numLookups.sum();
+	}
+
+	/**
+	 * This method returns how many lookups since the counts were reset found an entry.
+	 */
+	public long getNumHits() {
+		return _numHits.sum();
+	}
+
+	/**
+	 * This method sets the lookup and hit counts back to zero, e.g. at the start of a move.
+	 */
+	public void resetCounts() {
+		_numLookups.reset();
+		_numHits.reset();
+	}
+}